@@ -0,0 +1,200 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.netbeans.es.perftest.Corpus;
+import org.netbeans.es.perftest.ParserImplementation;
+import org.netbeans.es.perftest.ParserOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark running the registered {@link ParserImplementation}s over the test corpus.
+ * The benchmarked file is loaded into memory in the set up, the I/O is not measured.
+ * The corpus root is given by the {@code perftest.corpus} system property, the default
+ * is the {@code testFiles} folder next to the benchmark module.
+ * The {@code options} parameter holds space separated parser specific options, the
+ * option arguments are separated by a colon, eg. {@code -p options="atncfg:3 lex"}.
+ * The parser start run, before and after parse hooks are called out of the measurement.
+ * @author Tomas Zezula
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(3)
+public class ParserBenchmark {
+    private static final String PROP_CORPUS = "perftest.corpus"; //NOI18N
+    private static final String DEFAULT_CORPUS = "../testFiles"; //NOI18N
+
+    @Param({"antlr", "nashorn", "esprima"}) //NOI18N
+    public String parser;
+
+    @Param({""})
+    public String options;
+
+    @Param({
+        "backbone.js",                      //NOI18N
+        "prototype.js",                     //NOI18N
+        "common.js",                        //NOI18N
+        "espree/ast-node-factory.js",       //NOI18N
+        "espree/ast-node-types.js",         //NOI18N
+        "espree/comment-attachment.js",     //NOI18N
+        "espree/compat.js",                 //NOI18N
+        "espree/esparse.js",                //NOI18N
+        "espree/espree.js",                 //NOI18N
+        "espree/esvalidate.js",             //NOI18N
+        "espree/features.js",               //NOI18N
+        "espree/messages.js",               //NOI18N
+        "espree/reflect.js",                //NOI18N
+        "espree/run.js",                    //NOI18N
+        "espree/runner.js",                 //NOI18N
+        "espree/string-map.js",             //NOI18N
+        "espree/syntax.js",                 //NOI18N
+        "espree/test.js",                   //NOI18N
+        "espree/token-info.js",             //NOI18N
+        "espree/xhtml-entities.js"          //NOI18N
+    })
+    public String file;
+
+    private ParserImplementation impl;
+    private ParserOptions opts;
+    private Corpus.Source source;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        impl = findParser(parser);
+        final List<String> parserOptions = new ArrayList<>();
+        for (String option : options.trim().split("\\s+")) {   //NOI18N
+            if (!option.isEmpty()) {
+                parserOptions.add(option.replace(':', ','));
+            }
+        }
+        final Set<String> supportedOptions = impl.getOptions().keySet();
+        for (String parserOption : parserOptions) {
+            if (!supportedOptions.contains(ParserOptions.splitParserArg(parserOption)[0])) {
+                throw new IllegalArgumentException(parserOption);
+            }
+        }
+        opts = ParserOptions.Builder.newInstance()
+                .setParserSpecificOptions(parserOptions)
+                .setProgress(new PrintWriter(new OutputStreamWriter(new NullOutputStream())))
+                .build();
+        impl.setUp(opts);
+        final File f = new File(System.getProperty(PROP_CORPUS, DEFAULT_CORPUS), file);
+        if (!f.canRead()) {
+            throw new IllegalStateException("Cannot read: " + f.getAbsolutePath());  //NOI18N
+        }
+        source = Corpus.load(f).getSources().get(0);
+    }
+
+    @Setup(Level.Iteration)
+    public void startRun() {
+        impl.startRun();
+    }
+
+    /**
+     * The parser hooks run outside of the measurement for each invocation,
+     * the {@link #afterParse} performs the work deferred by the parse, like
+     * the verification or the retained size, which would pile up otherwise.
+     */
+    @Setup(Level.Invocation)
+    public void beforeParse() {
+        impl.beforeParse();
+    }
+
+    @TearDown(Level.Invocation)
+    public void afterParse() {
+        impl.afterParse();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        impl.report(opts);
+    }
+
+    @Benchmark
+    public boolean parse() throws IOException {
+        return impl.parse(source.getName(), source.getContent(), opts);
+    }
+
+    private static ParserImplementation findParser(final String name) {
+        for (ParserImplementation p : ServiceLoader.load(ParserImplementation.class)) {
+            if (name.equals(p.getName())) {
+                return p;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -94,6 +94,119 @@ package org.netbeans.modules.javascript2.editor.parser6;
 @parser::members {
     private static String TARGET_IDENT = "target";
 
+    // Parse binaryExpression by precedence climbing rather than by the generated prediction loop
+    private boolean precedenceClimbing;
+
+    /**
+     * Enables the hand written precedence climbing for binary expressions.
+     * It builds the same parse tree as the generated code but selects the
+     * operator by a precedence table instead of the adaptive prediction and
+     * precedence predicates. It does not do the in-loop error recovery, so it
+     * should be used with the {@link BailErrorStrategy}.
+     *
+     * @param precedenceClimbing true to enable the precedence climbing
+     */
+    public void setPrecedenceClimbing(boolean precedenceClimbing) {
+        this.precedenceClimbing = precedenceClimbing;
+    }
+
+    public boolean isPrecedenceClimbing() {
+        return precedenceClimbing;
+    }
+
+    private BinaryExpressionContext climbBinaryExpression(
+            BinaryExpressionContext _localctx,
+            ParserRuleContext _parentctx,
+            int _parentState,
+            int _p) throws RecognitionException {
+        final BinaryOperators ops = BinaryOperators.INSTANCE;
+        try {
+            enterOuterAlt(_localctx, 1);
+            setState(ops.operandState);
+            unaryExpression();
+            _ctx.stop = _input.LT(-1);
+            int level;
+            while ((level = ops.level(_input.LA(1))) >= _p) {
+                if ( _parseListeners!=null ) triggerExitRuleEvent();
+                final BinaryExpressionContext _prevctx = _localctx;
+                _localctx = new BinaryExpressionContext(_parentctx, _parentState);
+                _localctx.left = _prevctx;
+                pushNewRecursionContext(_localctx, ops.startState, RULE_binaryExpression);
+                setState(ops.operatorState[level]);
+                _localctx.operator = _input.LT(1);
+                consume();
+                setState(ops.rightState[level]);
+                _localctx.right = binaryExpression(level + 1);
+            }
+        } catch (RecognitionException re) {
+            _localctx.exception = re;
+            _errHandler.reportError(this, re);
+            _errHandler.recover(this, re);
+        } finally {
+            unrollRecursionContexts(_parentctx);
+        }
+        return _localctx;
+    }
+
+    /**
+     * The binary operator precedence levels and ATN states read from the
+     * binaryExpression rule so that they follow the grammar.
+     */
+    private static final class BinaryOperators {
+        static final BinaryOperators INSTANCE = new BinaryOperators();
+
+        final int startState;
+        final int operandState;
+        final int[] operatorState;
+        final int[] rightState;
+        private final int[] levels;
+
+        private BinaryOperators() {
+            startState = _ATN.ruleToStartState[RULE_binaryExpression].stateNumber;
+            int operand = -1;
+            int maxLevel = 0;
+            levels = new int[_ATN.maxTokenType + 1];
+            java.util.Arrays.fill(levels, -1);
+            final java.util.Map<Integer,Integer> operators = new java.util.HashMap<>();
+            final java.util.Map<Integer,Integer> rights = new java.util.HashMap<>();
+            for (ATNState state : _ATN.states) {
+                if (state == null || state.ruleIndex != RULE_binaryExpression) {
+                    continue;
+                }
+                for (int i = 0; i < state.getNumberOfTransitions(); i++) {
+                    final Transition t = state.transition(i);
+                    if (t instanceof RuleTransition) {
+                        final RuleTransition rt = (RuleTransition) t;
+                        if (rt.ruleIndex == RULE_unaryExpression) {
+                            operand = state.stateNumber;
+                        } else if (rt.ruleIndex == RULE_binaryExpression) {
+                            rights.put(rt.precedence - 1, state.stateNumber);
+                        }
+                    } else if (t instanceof PrecedencePredicateTransition) {
+                        final int level = ((PrecedencePredicateTransition) t).precedence;
+                        final ATNState operator = t.target;
+                        operators.put(level, operator.stateNumber);
+                        for (int tt : operator.transition(0).label().toArray()) {
+                            levels[tt] = level;
+                        }
+                        maxLevel = Math.max(maxLevel, level);
+                    }
+                }
+            }
+            operandState = operand;
+            operatorState = new int[maxLevel + 1];
+            rightState = new int[maxLevel + 1];
+            for (int level = 1; level <= maxLevel; level++) {
+                operatorState[level] = operators.get(level);
+                rightState[level] = rights.get(level);
+            }
+        }
+
+        int level(int tokenType) {
+            return tokenType >= 0 && tokenType < levels.length ? levels[tokenType] : -1;
+        }
+    }
+
     private boolean lineTerminatorAhead() {
 
         // Get the token ahead of the current index.
@@ -401,7 +514,13 @@ unaryExpression         : postfixExpression
 //                        | logicalORExpression PUNCTUATOR_OR logicalANDExpression
 //                        ;
 
-binaryExpression            : unaryExpression
+binaryExpression
+@init {
+    if (precedenceClimbing) {
+        return climbBinaryExpression(_localctx, _parentctx, _parentState, _p);
+    }
+}
+                            : unaryExpression
                             | left=binaryExpression operator=(PUNCTUATOR_MULTIPLICATION | PUNCTUATOR_DIVISION | PUNCTUATOR_MODULUS) right=binaryExpression
                             | left=binaryExpression operator=(PUNCTUATOR_PLUS | PUNCTUATOR_MINUS) right=binaryExpression  
                             | left=binaryExpression operator=(PUNCTUATOR_LEFT_SHIFT_ARITHMETIC | PUNCTUATOR_RIGHT_SHIFT_ARITHMETIC | PUNCTUATOR_RIGHT_SHIFT) right=binaryExpression
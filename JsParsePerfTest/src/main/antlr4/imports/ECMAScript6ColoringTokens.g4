@@ -101,6 +101,59 @@ grammar ECMAScript6ColoringTokens;
         return next;
     }
 
+    /**
+     * Returns the lexer state which is not determined by the input position.
+     * Together with the input position and line the state is enough to restart
+     * the lexer, for example from a line checkpoint after an edit.
+     *
+     * @return the state snapshot
+     */
+    public LexerState getLexerState() {
+        return new LexerState(lastTokenId, inTemplate, branceBalanceInTemplate);
+    }
+
+    /**
+     * Restores the lexer state taken by {@link #getLexerState()}.
+     *
+     * @param state the state snapshot
+     */
+    public void setLexerState(LexerState state) {
+        this.lastTokenId = state.lastTokenId;
+        this.inTemplate = state.inTemplate;
+        this.branceBalanceInTemplate = state.branceBalanceInTemplate;
+    }
+
+    /**
+     * Immutable snapshot of the lexer state.
+     */
+    public static final class LexerState {
+        private final int lastTokenId;
+        private final int inTemplate;
+        private final int branceBalanceInTemplate;
+
+        private LexerState(int lastTokenId, int inTemplate, int branceBalanceInTemplate) {
+            this.lastTokenId = lastTokenId;
+            this.inTemplate = inTemplate;
+            this.branceBalanceInTemplate = branceBalanceInTemplate;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof LexerState)) {
+                return false;
+            }
+            final LexerState other = (LexerState) obj;
+            return lastTokenId == other.lastTokenId
+                && inTemplate == other.inTemplate
+                && branceBalanceInTemplate == other.branceBalanceInTemplate;
+        }
+
+        @Override
+        public int hashCode() {
+            return (lastTokenId * 31 + inTemplate) * 31 + branceBalanceInTemplate;
+        }
+    }
+
     /**
      * Returns {@code true} if the lexer can match a regex literal.
      *
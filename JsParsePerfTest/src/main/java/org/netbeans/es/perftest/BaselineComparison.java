@@ -0,0 +1,434 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the current run with a result set previously written by the
+ * {@link ResultWriter}.
+ * Only the records of the same parser with the same options and threads
+ * count are compared.
+ * The files are compared by the Mann-Whitney U test, the aggregate time is
+ * compared by a bootstrap confidence interval of the total time ratio.
+ * @author Tomas Zezula
+ */
+final class BaselineComparison {
+    private static final double SIGNIFICANCE = 0.05;
+    private static final int BOOTSTRAP_ROUNDS = 2000;
+    private static final int WORST_FILES = 10;
+
+    private final File file;
+    private final double threshold;
+    private final Map<String,long[]> baseline;
+    private final int skipped;
+    private final Map<String,String> pathsByName;
+
+    private BaselineComparison(
+            final File file,
+            final double threshold,
+            final Map<String,long[]> baseline,
+            final int skipped) {
+        this.file = file;
+        this.threshold = threshold;
+        this.baseline = baseline;
+        this.skipped = skipped;
+        this.pathsByName = new HashMap<>();
+        for (String path : baseline.keySet()) {
+            final String name = new File(path).getName();
+            //Ambiguous names are not used for matching
+            pathsByName.put(name, pathsByName.containsKey(name) ? null : path);
+        }
+    }
+
+    /**
+     * Compares the current times with the baseline and prints the result.
+     * @param w the report writer
+     * @param current the current times in nanoseconds per file path
+     * @return true if the aggregate time regressed past the threshold
+     */
+    boolean compare(
+            final PrintWriter w,
+            final Map<String,long[]> current) {
+        final List<String> names = new ArrayList<>();
+        final List<long[]> cur = new ArrayList<>();
+        final List<long[]> base = new ArrayList<>();
+        final List<FileChange> regressed = new ArrayList<>();
+        int tooFewRuns = 0;
+        int minCurRuns = Integer.MAX_VALUE;
+        int minBaseRuns = Integer.MAX_VALUE;
+        for (Map.Entry<String,long[]> e : current.entrySet()) {
+            final long[] baseTimes = find(e.getKey());
+            if (baseTimes == null) {
+                continue;
+            }
+            names.add(e.getKey());
+            cur.add(e.getValue());
+            base.add(baseTimes);
+            final double baseMedian = Statistics.of(baseTimes).median();
+            final double curMedian = Statistics.of(e.getValue()).median();
+            final double change = baseMedian == 0 ? 0 : curMedian / baseMedian - 1;
+            final double p = Statistics.mannWhitneyP(e.getValue(), baseTimes);
+            if (Statistics.mannWhitneyMinP(e.getValue().length, baseTimes.length) >= SIGNIFICANCE) {
+                tooFewRuns++;
+                minCurRuns = Math.min(minCurRuns, e.getValue().length);
+                minBaseRuns = Math.min(minBaseRuns, baseTimes.length);
+            }
+            if (p < SIGNIFICANCE && change > threshold) {
+                regressed.add(new FileChange(e.getKey(), baseMedian, curMedian, change, p));
+            }
+        }
+        w.printf("Baseline: %s Compared files: %d Threshold: %.1f%%%n",    //NOI18N
+                file.getName(),
+                names.size(),
+                threshold * 100);
+        if (skipped > 0) {
+            w.printf("Ignored baseline records of other parsers, options or threads: %d%n", skipped);    //NOI18N
+        }
+        if (tooFewRuns > 0) {
+            w.printf("Warning: %d file(s) with too few runs (current: %d baseline: %d) to ever reach p < %.2f, use more runs.%n", //NOI18N
+                    tooFewRuns,
+                    minCurRuns,
+                    minBaseRuns,
+                    SIGNIFICANCE);
+        }
+        if (names.isEmpty()) {
+            w.println("No files in common with the baseline.");    //NOI18N
+            w.flush();
+            return false;
+        }
+        final double ratio = total(cur, null) / total(base, null);
+        final double[] ratios = new double[BOOTSTRAP_ROUNDS];
+        final Random rnd = new Random(BOOTSTRAP_ROUNDS);
+        for (int i = 0; i < BOOTSTRAP_ROUNDS; i++) {
+            ratios[i] = total(cur, rnd) / total(base, rnd);
+        }
+        Arrays.sort(ratios);
+        final double lo = ratios[(int) (BOOTSTRAP_ROUNDS * 0.025)];
+        final double hi = ratios[(int) (BOOTSTRAP_ROUNDS * 0.975) - 1];
+        final boolean regression = lo > 1 + threshold;
+        w.printf("Aggregate: Time ratio: %.3f [%.3f, %.3f] (95%% bootstrap CI) Throughput change: %+.1f%% Regression: %b%n",  //NOI18N
+                ratio,
+                lo,
+                hi,
+                (1 / ratio - 1) * 100,
+                regression);
+        Collections.sort(regressed, (a, b) -> Double.compare(b.change, a.change));
+        w.printf("Significantly regressed files: %d%n", regressed.size());  //NOI18N
+        regressed.stream()
+                .limit(WORST_FILES)
+                .forEach((fc) -> {
+                    w.printf("\t%s: %+.1f%% Median: %s -> %s p: %.4f%n", //NOI18N
+                            fc.path,
+                            fc.change * 100,
+                            Statistics.millis(fc.baseMedian),
+                            Statistics.millis(fc.curMedian),
+                            fc.p);
+                });
+        w.flush();
+        return regression;
+    }
+
+    private long[] find(final String path) {
+        long[] res = baseline.get(path);
+        if (res == null) {
+            final String basePath = pathsByName.get(new File(path).getName());
+            if (basePath != null) {
+                res = baseline.get(basePath);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Sums the per-file mean times, with a non null {@link Random} the
+     * samples of each file are resampled with replacement.
+     */
+    private static double total(
+            final List<long[]> times,
+            final Random rnd) {
+        double total = 0;
+        for (long[] samples : times) {
+            double sum = 0;
+            for (int i = 0; i < samples.length; i++) {
+                sum += samples[rnd == null ? i : rnd.nextInt(samples.length)];
+            }
+            total += sum / samples.length;
+        }
+        return total;
+    }
+
+    /**
+     * Loads the baseline written by the {@link ResultWriter}.
+     * @param file the JSON Lines or CSV file
+     * @param threshold the allowed relative slow down
+     * @param parser the parser name the records have to match
+     * @param options the parser options the records have to match
+     * @param threads the threads count the records have to match
+     * @return the {@link BaselineComparison}
+     * @throws IOException in case of I/O error or when no record matches
+     */
+    static BaselineComparison load(
+            final File file,
+            final double threshold,
+            final String parser,
+            final Collection<? extends String> options,
+            final int threads) throws IOException {
+        final String opts = String.join(" ", options);  //NOI18N
+        int skipped = 0;
+        final boolean csv = file.getName().toLowerCase().endsWith(".csv");    //NOI18N
+        final Map<String,List<Long>> times = new LinkedHashMap<>();
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            List<String> header = null;
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                final Map<String,String> record;
+                if (csv) {
+                    final List<String> values = parseCsv(line);
+                    if (header == null) {
+                        header = values;
+                        continue;
+                    }
+                    record = new HashMap<>();
+                    for (int i = 0; i < Math.min(header.size(), values.size()); i++) {
+                        record.put(header.get(i), values.get(i));
+                    }
+                } else {
+                    record = parseJson(line);
+                }
+                if (!parser.equals(record.get(ResultWriter.COL_PARSER)) ||
+                        !opts.equals(record.get(ResultWriter.COL_OPTIONS)) ||
+                        !String.valueOf(threads).equals(record.get(ResultWriter.COL_THREADS))) {
+                    skipped++;
+                    continue;
+                }
+                final String path = record.get(ResultWriter.COL_FILE);
+                final String time = record.get(ResultWriter.COL_TIME);
+                if (path == null || time == null) {
+                    throw new IOException("Invalid record: " + line);   //NOI18N
+                }
+                times.computeIfAbsent(path, (k) -> new ArrayList<>()).add(Long.parseLong(time));
+            }
+        }
+        if (times.isEmpty()) {
+            throw new IOException(String.format(
+                    "No records of parser %s with options '%s' and %d thread(s) in baseline: %s",  //NOI18N
+                    parser,
+                    opts,
+                    threads,
+                    file));
+        }
+        final Map<String,long[]> baseline = new LinkedHashMap<>();
+        for (Map.Entry<String,List<Long>> e : times.entrySet()) {
+            baseline.put(e.getKey(), e.getValue().stream().mapToLong((l)->l).toArray());
+        }
+        return new BaselineComparison(file, threshold, baseline, skipped);
+    }
+
+    private static List<String> parseCsv(final String line) {
+        final List<String> res = new ArrayList<>();
+        final StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        sb.append(c);
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                res.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        res.add(sb.toString());
+        return res;
+    }
+
+    /**
+     * Parses a flat JSON object as written by the {@link ResultWriter}.
+     */
+    private static Map<String,String> parseJson(final String line) throws IOException {
+        final Map<String,String> res = new HashMap<>();
+        final int[] pos = {skipWs(line, 0)};
+        expect(line, pos, '{');
+        if (line.charAt(skipWs(line, pos[0])) == '}') {
+            return res;
+        }
+        while (true) {
+            pos[0] = skipWs(line, pos[0]);
+            final String key = parseString(line, pos);
+            pos[0] = skipWs(line, pos[0]);
+            expect(line, pos, ':');
+            pos[0] = skipWs(line, pos[0]);
+            final String value;
+            if (line.charAt(pos[0]) == '"') {
+                value = parseString(line, pos);
+            } else {
+                final int start = pos[0];
+                while (pos[0] < line.length() && ",} \t".indexOf(line.charAt(pos[0])) < 0) {    //NOI18N
+                    pos[0]++;
+                }
+                value = line.substring(start, pos[0]);
+            }
+            res.put(key, value);
+            pos[0] = skipWs(line, pos[0]);
+            if (pos[0] < line.length() && line.charAt(pos[0]) == ',') {
+                pos[0]++;
+            } else {
+                expect(line, pos, '}');
+                return res;
+            }
+        }
+    }
+
+    private static String parseString(
+            final String line,
+            final int[] pos) throws IOException {
+        expect(line, pos, '"');
+        final StringBuilder sb = new StringBuilder();
+        while (pos[0] < line.length()) {
+            final char c = line.charAt(pos[0]++);
+            if (c == '"') {
+                return sb.toString();
+            } else if (c == '\\' && pos[0] < line.length()) {
+                final char e = line.charAt(pos[0]++);
+                switch (e) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'u':
+                        if (pos[0] + 4 > line.length()) {
+                            throw new IOException("Invalid escape: " + line);   //NOI18N
+                        }
+                        sb.append((char) Integer.parseInt(line.substring(pos[0], pos[0] + 4), 16));
+                        pos[0] += 4;
+                        break;
+                    default:
+                        sb.append(e);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        throw new IOException("Unterminated string: " + line);  //NOI18N
+    }
+
+    private static void expect(
+            final String line,
+            final int[] pos,
+            final char c) throws IOException {
+        if (pos[0] >= line.length() || line.charAt(pos[0]) != c) {
+            throw new IOException(String.format("Expected '%c' at %d: %s", c, pos[0], line));  //NOI18N
+        }
+        pos[0]++;
+    }
+
+    private static int skipWs(
+            final String line,
+            int pos) {
+        while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static final class FileChange {
+        final String path;
+        final double baseMedian;
+        final double curMedian;
+        final double change;
+        final double p;
+
+        FileChange(
+                final String path,
+                final double baseMedian,
+                final double curMedian,
+                final double change,
+                final double p) {
+            this.path = path;
+            this.baseMedian = baseMedian;
+            this.curMedian = curMedian;
+            this.change = change;
+            this.p = p;
+        }
+    }
+}
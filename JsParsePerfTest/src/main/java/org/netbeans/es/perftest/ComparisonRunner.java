@@ -0,0 +1,357 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares several parsers in a single JVM.
+ * The parsers are executed file by file on the same in memory corpus, either
+ * interleaved in a rotating order or in a random order, so that they share
+ * the JIT and machine conditions.
+ * @author Tomas Zezula
+ */
+final class ComparisonRunner implements Runnable {
+
+    enum Order {
+        INTERLEAVED,
+        RANDOM
+    }
+
+    private final List<ParserImplementation> parsers;
+    private final List<ParserOptions> options;
+    private final File source;
+    private final Corpus.Builder corpusBuilder;
+    private final int runs;
+    private final boolean warmUp;
+    private final Order order;
+    private final long seed;
+    private final PrintWriter progressWriter;
+    private final PrintWriter reportWriter;
+
+    private ComparisonRunner(
+            final Map<ParserImplementation,ParserOptions> parsers,
+            final Corpus.Builder corpusBuilder,
+            final int runs,
+            final boolean warmUp,
+            final Order order,
+            final long seed) {
+        this.parsers = new ArrayList<>(parsers.keySet());
+        this.options = new ArrayList<>(parsers.values());
+        this.source = corpusBuilder.getSource();
+        this.corpusBuilder = corpusBuilder;
+        this.runs = runs;
+        this.warmUp = warmUp;
+        this.order = order;
+        this.seed = seed;
+        this.progressWriter = options.get(0).getProgressWriter();
+        this.reportWriter = options.get(0).getReportWriter();
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (int i = 0; i < parsers.size(); i++) {
+                parsers.get(i).setUp(options.get(i));
+            }
+            final Corpus corpus = corpusBuilder.build();
+            final List<Corpus.Source> files = corpus.getSources();
+            final long[][][] times = new long[parsers.size()][files.size()][runs];
+            final boolean[][] success = new boolean[parsers.size()][files.size()];
+            for (boolean[] s : success) {
+                Arrays.fill(s, true);
+            }
+            final ParseResult res = new ParseResult();
+            if (warmUp) {
+                progress("Warm up...%n");  //NOI18N
+                parsers.forEach(ParserImplementation::startRun);
+                for (Corpus.Source f : files) {
+                    for (int p = 0; p < parsers.size(); p++) {
+                        TestRunner.parse(parsers.get(p), f, options.get(p), res);
+                    }
+                }
+            }
+            progress("Comparing %s on %s in %d round(s), %s order.%n",   //NOI18N
+                    names(),
+                    source.getName(),
+                    runs,
+                    order.name().toLowerCase());
+            final Random rnd = new Random(seed);
+            for (int run = 0; run < runs; run++) {
+                parsers.forEach(ParserImplementation::startRun);
+                for (int[] step : schedule(files.size(), run, rnd)) {
+                    final int f = step[0];
+                    final int p = step[1];
+                    times[p][f][run] = TestRunner.parse(parsers.get(p), files.get(f), options.get(p), res);
+                    success[p][f] &= res.success;
+                }
+                progress("Run %d done.%n", 1 + run);   //NOI18N
+            }
+            report(files, times, success);
+            for (int i = 0; i < parsers.size(); i++) {
+                parsers.get(i).report(options.get(i));
+            }
+        } catch (IOException ioe) {
+            TestRunner.<Void,RuntimeException>sthrow(ioe);
+        }
+    }
+
+    /**
+     * Creates the execution order of a single run as pairs of file and parser
+     * index. The interleaved order rotates the parsers every run to avoid
+     * favouring the parser executed first.
+     */
+    private List<int[]> schedule(
+            final int filesCount,
+            final int run,
+            final Random rnd) {
+        final int n = parsers.size();
+        final List<int[]> steps = new ArrayList<>(filesCount * n);
+        for (int f = 0; f < filesCount; f++) {
+            for (int k = 0; k < n; k++) {
+                steps.add(new int[] {f, (k + run) % n});
+            }
+        }
+        if (order == Order.RANDOM) {
+            Collections.shuffle(steps, rnd);
+        }
+        return steps;
+    }
+
+    private void report(
+            final List<Corpus.Source> files,
+            final long[][][] times,
+            final boolean[][] success) {
+        final PrintWriter w = reportWriter;
+        final int n = parsers.size();
+        w.println("########################################");
+        w.printf("Executed: %s%n", new Date());
+        w.printf("Parsers: %s (%s order%s)%n",     //NOI18N
+                names(),
+                order.name().toLowerCase(),
+                warmUp ? ", warmed up" : "");  //NOI18N
+        for (int p = 0; p < n; p++) {
+            if (!options.get(p).getParserSpecificOptions().isEmpty()) {
+                w.printf("Options of %s: %s%n",   //NOI18N
+                        parsers.get(p).getName(),
+                        String.join(", ", options.get(p).getParserSpecificOptions()));  //NOI18N
+            }
+        }
+        w.printf(source.isDirectory() ?
+            "Tested files in directory: %s%n" :
+            "Tested file: %s%n",
+                source.getName());
+        w.println("########################################");
+        int nameWidth = "Total".length();    //NOI18N
+        for (Corpus.Source f : files) {
+            nameWidth = Math.max(nameWidth, f.getName().length());
+        }
+        final String ref = parsers.get(0).getName();
+        final String[] speedUpHeaders = new String[n];
+        final String[] speedUpFormats = new String[n];
+        final String[] speedUpBlanks = new String[n];
+        for (int p = 1; p < n; p++) {
+            speedUpHeaders[p] = parsers.get(p).getName() + " vs " + ref;  //NOI18N
+            speedUpFormats[p] = " %" + (Math.max(14, speedUpHeaders[p].length()) - 1) + ".2fx";    //NOI18N
+            speedUpBlanks[p] = " %" + Math.max(14, speedUpHeaders[p].length()) + "s";    //NOI18N
+        }
+        w.printf("%-" + nameWidth + "s", "File");  //NOI18N
+        for (ParserImplementation p : parsers) {
+            w.printf(" %14s", p.getName());   //NOI18N
+        }
+        for (int p = 1; p < n; p++) {
+            w.printf(" %14s", speedUpHeaders[p]);   //NOI18N
+        }
+        w.println();
+        final double[] totals = new double[n];
+        final double[] logSpeedUps = new double[n];
+        final int[] speedUpFiles = new int[n];
+        for (int f = 0; f < files.size(); f++) {
+            final double[] medians = new double[n];
+            for (int p = 0; p < n; p++) {
+                medians[p] = Statistics.of(times[p][f]).median();
+                totals[p] += medians[p];
+            }
+            w.printf("%-" + nameWidth + "s", files.get(f).getName());   //NOI18N
+            for (int p = 0; p < n; p++) {
+                w.printf(" %13s%s", Statistics.millis(medians[p]), success[p][f] ? " " : "!");    //NOI18N
+            }
+            for (int p = 1; p < n; p++) {
+                //A zero median or a failed parse has no meaningful speed up
+                if (medians[0] > 0 && medians[p] > 0 && success[0][f] && success[p][f]) {
+                    final double speedUp = medians[0] / medians[p];
+                    logSpeedUps[p] += Math.log(speedUp);
+                    speedUpFiles[p]++;
+                    w.printf(speedUpFormats[p], speedUp);
+                } else {
+                    w.printf(speedUpBlanks[p], "-");  //NOI18N
+                }
+            }
+            w.println();
+        }
+        w.printf("%-" + nameWidth + "s", "Total");  //NOI18N
+        for (int p = 0; p < n; p++) {
+            w.printf(" %13s ", Statistics.millis(totals[p]));   //NOI18N
+        }
+        for (int p = 1; p < n; p++) {
+            if (totals[0] > 0 && totals[p] > 0) {
+                w.printf(speedUpFormats[p], totals[0] / totals[p]);
+            } else {
+                w.printf(speedUpBlanks[p], "-");  //NOI18N
+            }
+        }
+        w.println();
+        w.printf("%-" + nameWidth + "s", "Geomean");    //NOI18N
+        for (int p = 0; p < n; p++) {
+            w.printf(" %14s", "");  //NOI18N
+        }
+        for (int p = 1; p < n; p++) {
+            w.printf(speedUpFormats[p], speedUpFiles[p] == 0 ? 1.0 : Math.exp(logSpeedUps[p] / speedUpFiles[p]));
+        }
+        w.println();
+        for (int p = 1; p < n; p++) {
+            if (speedUpFiles[p] < files.size()) {
+                w.printf("Excluded from %s: %d file(s) with a zero median or a failed parse, marked '-'.%n",  //NOI18N
+                        speedUpHeaders[p],
+                        files.size() - speedUpFiles[p]);
+            }
+        }
+        w.println("Times are medians of the runs, speed ups are relative to " + ref + ", '!' marks a failed parse.");  //NOI18N
+        w.flush();
+    }
+
+    private String names() {
+        final StringBuilder sb = new StringBuilder();
+        for (ParserImplementation p : parsers) {
+            if (sb.length() > 0) {
+                sb.append(", ");    //NOI18N
+            }
+            sb.append(p.getName());
+        }
+        return sb.toString();
+    }
+
+    private void progress(
+            final String message,
+            final Object... args) {
+        progressWriter.printf(message, args);
+        progressWriter.flush();
+    }
+
+    static final class Builder {
+        private final Map<ParserImplementation,ParserOptions> parsers;
+        private final File source;
+        private Corpus.Builder corpusBuilder;
+        private int runs = 1;
+        private boolean warmUp;
+        private Order order = Order.INTERLEAVED;
+        private long seed;
+
+        private Builder(final File source) {
+            this.parsers = new LinkedHashMap<>();
+            this.source = source;
+        }
+
+        /**
+         * Adds a parser to compare, the first added parser is the reference one.
+         * @param parser the parser
+         * @param options the options of the parser
+         * @return the {@link Builder}
+         */
+        Builder addParser(
+                final ParserImplementation parser,
+                final ParserOptions options) {
+            parsers.put(parser, options);
+            return this;
+        }
+
+        Builder setCorpus(Corpus.Builder corpusBuilder) {
+            this.corpusBuilder = corpusBuilder;
+            return this;
+        }
+
+        Builder setRunsCount(int runs) {
+            this.runs = runs;
+            return this;
+        }
+
+        Builder setWarmUp(boolean warmUp) {
+            this.warmUp = warmUp;
+            return this;
+        }
+
+        Builder setOrder(Order order, long seed) {
+            this.order = order;
+            this.seed = seed;
+            return this;
+        }
+
+        ComparisonRunner build() {
+            if (parsers.isEmpty()) {
+                throw new IllegalStateException("No parser to compare.");   //NOI18N
+            }
+            return new ComparisonRunner(
+                    parsers,
+                    corpusBuilder != null ?
+                            corpusBuilder :
+                            Corpus.Builder.newInstance(source),
+                    runs,
+                    warmUp,
+                    order,
+                    seed);
+        }
+
+        static Builder newInstance(final File source) {
+            return new Builder(source);
+        }
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * The test files read and decoded into memory.
+ * The corpus is loaded once before the measurement so that the measured
+ * parse time does not include the disk I/O.
+ * @author Tomas Zezula
+ */
+public final class Corpus implements Iterable<Corpus.Source> {
+    private final List<Source> sources;
+    private final long totalBytes;
+    private final long totalLines;
+
+    private Corpus(final List<Source> sources) {
+        this.sources = Collections.unmodifiableList(sources);
+        long bytes = 0L;
+        long lines = 0L;
+        for (Source s : sources) {
+            bytes += s.getSize();
+            lines += s.getLines();
+        }
+        this.totalBytes = bytes;
+        this.totalLines = lines;
+    }
+
+    @Override
+    public Iterator<Source> iterator() {
+        return sources.iterator();
+    }
+
+    public List<Source> getSources() {
+        return sources;
+    }
+
+    public Stream<Source> stream() {
+        return sources.stream();
+    }
+
+    public int size() {
+        return sources.size();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getTotalLines() {
+        return totalLines;
+    }
+
+    /**
+     * Loads the given file or all the javascript files in the given folder.
+     * @param source the file or folder
+     * @return the loaded {@link Corpus}
+     * @throws IOException in case of I/O error
+     */
+    public static Corpus load(final File source) throws IOException {
+        return Builder.newInstance(source).build();
+    }
+
+    private static Source read(
+            final File file,
+            final String path) throws IOException {
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        final CharBuffer cb = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(bytes));
+        final char[] content = new char[cb.remaining()];
+        cb.get(content);
+        return new Source(file, path, content, bytes.length, countLines(content));
+    }
+
+    private static int countLines(final char[] content) {
+        int lines = content.length == 0 ? 0 : 1;
+        for (int i = 0; i < content.length; i++) {
+            final char c = content[i];
+            if (c == '\n' || (c == '\r' && (i + 1 == content.length || content[i + 1] != '\n'))) {
+                if (i + 1 < content.length) {
+                    lines++;
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * The order of the corpus files.
+     */
+    public enum Order {
+        /**
+         * Ordered by the path relative to the source folder.
+         */
+        NAME,
+        /**
+         * Ordered by size, the smallest first.
+         */
+        SIZE,
+        /**
+         * Shuffled using a seed.
+         */
+        RANDOM
+    }
+
+    /**
+     * Selects and loads the corpus files.
+     * The folder is walked just once, the file sizes are taken from the walk
+     * attributes so that the filtered out files are never read.
+     */
+    public static final class Builder {
+        private final File source;
+        private final List<String> includes = new ArrayList<>();
+        private final List<String> excludes = new ArrayList<>();
+        private int maxFiles = Integer.MAX_VALUE;
+        private long minSize = 0;
+        private long maxSize = Long.MAX_VALUE;
+        private Order order = Order.NAME;
+        private long seed;
+
+        private Builder(final File source) {
+            source.getClass();
+            this.source = source;
+        }
+
+        /**
+         * Adds an include glob, matched against the path relative to the
+         * source folder or the file name. When no include is given all
+         * the javascript files are included.
+         * @param glob the glob
+         * @return the {@link Builder}
+         */
+        public Builder addInclude(final String glob) {
+            glob.getClass();
+            includes.add(glob);
+            return this;
+        }
+
+        /**
+         * Adds an exclude glob, matched against the path relative to the
+         * source folder or the file name.
+         * @param glob the glob
+         * @return the {@link Builder}
+         */
+        public Builder addExclude(final String glob) {
+            glob.getClass();
+            excludes.add(glob);
+            return this;
+        }
+
+        /**
+         * Limits the number of files, the limit is applied after ordering.
+         * @param maxFiles the maximal number of files
+         * @return the {@link Builder}
+         */
+        public Builder setMaxFiles(final int maxFiles) {
+            if (maxFiles < 1) {
+                throw new IllegalArgumentException(String.valueOf(maxFiles));
+            }
+            this.maxFiles = maxFiles;
+            return this;
+        }
+
+        /**
+         * Limits the file sizes.
+         * @param minSize the minimal size in bytes inclusive
+         * @param maxSize the maximal size in bytes inclusive
+         * @return the {@link Builder}
+         */
+        public Builder setSizeRange(final long minSize, final long maxSize) {
+            if (minSize < 0 || maxSize < minSize) {
+                throw new IllegalArgumentException(String.format("%d,%d", minSize, maxSize));   //NOI18N
+            }
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Sets the order of files.
+         * @param order the order
+         * @param seed the seed used by the {@link Order#RANDOM}
+         * @return the {@link Builder}
+         */
+        public Builder setOrder(final Order order, final long seed) {
+            order.getClass();
+            this.order = order;
+            this.seed = seed;
+            return this;
+        }
+
+        public File getSource() {
+            return source;
+        }
+
+        public Corpus build() throws IOException {
+            final Path root = source.toPath();
+            final List<PathMatcher> in = matchers(includes);
+            final List<PathMatcher> ex = matchers(excludes);
+            final List<Candidate> candidates = new ArrayList<>();
+            if (source.isFile()) {
+                candidates.add(new Candidate(root, root.getFileName(), Files.size(root)));
+            } else {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        if (attrs.isRegularFile()) {
+                            final Path rel = root.relativize(file);
+                            final boolean included = in.isEmpty() ?
+                                    file.getFileName().toString().toLowerCase().endsWith(".js") :  //NOI18N
+                                    matches(in, rel);
+                            if (included && !matches(ex, rel)) {
+                                candidates.add(new Candidate(file, rel, attrs.size()));
+                            }
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+            candidates.removeIf((c) -> c.size < minSize || c.size > maxSize);
+            switch (order) {
+                case NAME:
+                    candidates.sort((a, b) -> a.relative.toString().compareTo(b.relative.toString()));
+                    break;
+                case SIZE:
+                    candidates.sort((a, b) -> {
+                        int res = Long.compare(a.size, b.size);
+                        if (res == 0) {
+                            res = a.relative.toString().compareTo(b.relative.toString());
+                        }
+                        return res;
+                    });
+                    break;
+                case RANDOM:
+                    candidates.sort((a, b) -> a.relative.toString().compareTo(b.relative.toString()));
+                    Collections.shuffle(candidates, new Random(seed));
+                    break;
+                default:
+                    throw new IllegalStateException(order.name());
+            }
+            final List<Source> sources = new ArrayList<>(Math.min(maxFiles, candidates.size()));
+            for (Candidate c : candidates.subList(0, Math.min(maxFiles, candidates.size()))) {
+                sources.add(read(
+                        c.path.toFile(),
+                        c.relative.toString().replace(File.separatorChar, '/')));
+            }
+            return new Corpus(sources);
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append("order: ").append(order.name().toLowerCase());    //NOI18N
+            if (order == Order.RANDOM) {
+                sb.append(" seed: ").append(seed);  //NOI18N
+            }
+            if (!includes.isEmpty()) {
+                sb.append(" includes: ").append(includes);  //NOI18N
+            }
+            if (!excludes.isEmpty()) {
+                sb.append(" excludes: ").append(excludes);  //NOI18N
+            }
+            if (minSize > 0 || maxSize < Long.MAX_VALUE) {
+                sb.append(" size: ").append(minSize).append('-')    //NOI18N
+                        .append(maxSize == Long.MAX_VALUE ? "" : String.valueOf(maxSize)); //NOI18N
+            }
+            if (maxFiles < Integer.MAX_VALUE) {
+                sb.append(" max files: ").append(maxFiles); //NOI18N
+            }
+            return sb.toString();
+        }
+
+        public static Builder newInstance(final File source) {
+            return new Builder(source);
+        }
+
+        private static List<PathMatcher> matchers(final List<String> globs) {
+            final FileSystem fs = FileSystems.getDefault();
+            final List<PathMatcher> res = new ArrayList<>(globs.size());
+            for (String glob : globs) {
+                res.add(fs.getPathMatcher("glob:" + glob)); //NOI18N
+            }
+            return res;
+        }
+
+        private static boolean matches(
+                final List<PathMatcher> matchers,
+                final Path relative) {
+            for (PathMatcher m : matchers) {
+                if (m.matches(relative) || m.matches(relative.getFileName())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static final class Candidate {
+            final Path path;
+            final Path relative;
+            final long size;
+
+            Candidate(
+                    final Path path,
+                    final Path relative,
+                    final long size) {
+                this.path = path;
+                this.relative = relative;
+                this.size = size;
+            }
+        }
+    }
+
+    /**
+     * A single in-memory test file.
+     */
+    public static final class Source {
+        private final File file;
+        private final String path;
+        private final char[] content;
+        private final long size;
+        private final int lines;
+
+        private Source(
+                final File file,
+                final String path,
+                final char[] content,
+                final long size,
+                final int lines) {
+            this.file = file;
+            this.path = path;
+            this.content = content;
+            this.size = size;
+            this.lines = lines;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public String getName() {
+            return file.getName();
+        }
+
+        /**
+         * Returns the path relative to the source folder separated by '/',
+         * the file name when the source is a single file.
+         * The path identifies the file within the corpus, unlike the name.
+         * @return the relative path
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Returns the decoded file content.
+         * The array is shared, callers must not modify it.
+         * @return the content
+         */
+        public char[] getContent() {
+            return content;
+        }
+
+        /**
+         * Returns the file size in bytes.
+         * @return the size
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the number of lines.
+         * @return the line count
+         */
+        public int getLines() {
+            return lines;
+        }
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Replays a sequence of edits on the corpus files and reparses the file
+ * after each edit, as the editor does while the user types.
+ * The edits are either randomly generated or read from a script with
+ * lines in the form {@code insert <offset> <text>} or
+ * {@code delete <offset> <length>}, the text may use the {@code \n},
+ * {@code \t} and {@code \\} escapes.
+ * @author Tomas Zezula
+ */
+final class EditReplay implements Runnable {
+    private static final String TYPED = "abcdefghijklmnopqrstuvwxyz_$0123456789";  //NOI18N
+    private static final int MAX_TYPED = 8;
+    private static final int LOCALITY = 200;
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+        "async", "await", "break", "case", "catch", "class", "const", "continue",  //NOI18N
+        "debugger", "default", "delete", "do", "else", "enum", "export", "extends", //NOI18N
+        "false", "finally", "for", "function", "get", "if", "implements", "import",    //NOI18N
+        "in", "instanceof", "interface", "let", "new", "null", "of", "package",    //NOI18N
+        "private", "protected", "public", "return", "set", "static", "super",  //NOI18N
+        "switch", "this", "throw", "true", "try", "typeof", "var", "void", "while", //NOI18N
+        "with", "yield"    //NOI18N
+    ));
+
+    private final ParserImplementation parser;
+    private final Corpus.Builder corpusBuilder;
+    private final ParserOptions opts;
+    private final List<Edit> script;
+    private final int editsCount;
+    private final long seed;
+    private final boolean warmUp;
+    private final PrintWriter progressWriter;
+    private final PrintWriter reportWriter;
+
+    private EditReplay(
+            final ParserImplementation parser,
+            final Corpus.Builder corpusBuilder,
+            final ParserOptions opts,
+            final List<Edit> script,
+            final int editsCount,
+            final long seed,
+            final boolean warmUp) {
+        this.parser = parser;
+        this.corpusBuilder = corpusBuilder;
+        this.opts = opts;
+        this.script = script;
+        this.editsCount = editsCount;
+        this.seed = seed;
+        this.warmUp = warmUp;
+        this.progressWriter = opts.getProgressWriter();
+        this.reportWriter = opts.getReportWriter();
+    }
+
+    @Override
+    public void run() {
+        try {
+            parser.setUp(opts);
+            final Corpus corpus = corpusBuilder.build();
+            final ParseResult res = new ParseResult();
+            if (warmUp) {
+                progress("Warm up...%n");  //NOI18N
+                parser.startRun();
+                corpus.forEach((f) -> TestRunner.parse(parser, f, opts, res));
+            }
+            final List<FileResult> results = new ArrayList<>(corpus.size());
+            for (Corpus.Source f : corpus) {
+                final List<Edit> edits = script != null ?
+                        script :
+                        randomEdits(f.getContent(), new Random(seed));
+                progress("Replaying %d edit(s) on %s.%n", edits.size(), f.getName());   //NOI18N
+                parser.startRun();
+                final long full = TestRunner.parse(parser, f, opts, res);
+                final boolean valid = res.success;
+                final long[] times = new long[edits.size()];
+                int failed = 0;
+                char[] content = f.getContent();
+                for (int i = 0; i < times.length; i++) {
+                    content = edits.get(i).apply(content);
+                    times[i] = parse(f.getPath(), content, res);
+                    if (!res.success) {
+                        failed++;
+                    }
+                }
+                results.add(new FileResult(f.getName(), full, valid, times, failed));
+            }
+            report(results);
+            parser.report(opts);
+        } catch (IOException ioe) {
+            TestRunner.<Void,RuntimeException>sthrow(ioe);
+        }
+    }
+
+    private long parse(
+            final String name,
+            final char[] content,
+            final ParseResult res) throws IOException {
+        parser.beforeParse();
+        final long st = System.nanoTime();
+        res.success = parser.parse(name, content, opts);
+        res.time = System.nanoTime() - st;
+        parser.afterParse();
+        return res.time;
+    }
+
+    /**
+     * Generates edits which keep a valid file valid, clustered around a moving caret.
+     * Characters are typed one by one at the end of an identifier and deleted
+     * back by backspaces, so every burst is undone and each intermediate
+     * content parses. Keywords, numbers and regular expression flags are
+     * never extended.
+     */
+    private List<Edit> randomEdits(
+            final char[] content,
+            final Random rnd) {
+        final List<Edit> res = new ArrayList<>(editsCount);
+        final int[] ends = identifierEnds(content);
+        if (ends.length == 0) {
+            return res;
+        }
+        int caret = ends[rnd.nextInt(ends.length)];
+        while (res.size() < editsCount) {
+            if (rnd.nextInt(10) < 2) {
+                caret = ends[rnd.nextInt(ends.length)];
+            } else {
+                final int target = caret + rnd.nextInt(2 * LOCALITY + 1) - LOCALITY;
+                final int index = Arrays.binarySearch(ends, target);
+                caret = ends[Math.min(ends.length - 1, index >= 0 ? index : -index - 1)];
+            }
+            final int len = 1 + rnd.nextInt(MAX_TYPED);
+            int typed = 0;
+            for (; typed < len && res.size() < editsCount; typed++) {
+                res.add(new Edit(caret + typed, 0, String.valueOf(TYPED.charAt(rnd.nextInt(TYPED.length())))));
+            }
+            while (typed > 0 && res.size() < editsCount) {
+                res.add(new Edit(caret + --typed, 1, ""));  //NOI18N
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns the sorted end offsets of the words which stay identifiers,
+     * string or comment content when extended by identifier characters.
+     */
+    private static int[] identifierEnds(final char[] content) {
+        final List<Integer> res = new ArrayList<>();
+        int i = 0;
+        while (i < content.length) {
+            if (!isWordChar(content[i])) {
+                i++;
+                continue;
+            }
+            final int start = i;
+            while (i < content.length && isWordChar(content[i])) {
+                i++;
+            }
+            if (!Character.isDigit(content[start]) &&
+                    (start == 0 || content[start - 1] != '/') &&
+                    !KEYWORDS.contains(new String(content, start, i - start))) {
+                res.add(i);
+            }
+        }
+        return res.stream().mapToInt((e)->e).toArray();
+    }
+
+    private static boolean isWordChar(final char c) {
+        return (c >= 'a' && c <= 'z') ||
+                (c >= 'A' && c <= 'Z') ||
+                (c >= '0' && c <= '9') ||
+                c == '_' ||
+                c == '$';
+    }
+
+    private void report(final List<FileResult> results) {
+        final PrintWriter w = reportWriter;
+        w.println("########################################");
+        w.printf("Executed: %s%n", new Date());
+        w.printf("Parser: %s%s%n",  //NOI18N
+                parser.getName(),
+                opts.getParserSpecificOptions().isEmpty() ?
+                        "" :    //NOI18N
+                        " (" + String.join(", ", opts.getParserSpecificOptions()) + ")");    //NOI18N
+        w.printf("Edit replay: %s%s%n",    //NOI18N
+                script != null ?
+                        String.format("%d scripted edit(s)", script.size()) :   //NOI18N
+                        String.format("%d random edit(s) seed: %d", editsCount, seed),  //NOI18N
+                warmUp ? " (warmed up)" : "");   //NOI18N
+        final File source = corpusBuilder.getSource();
+        w.printf(source.isDirectory() ?
+            "Tested files in directory: %s%n" :
+            "Tested file: %s%n",
+                source.getName());
+        w.println("########################################");
+        final List<Long> all = new ArrayList<>();
+        int failed = 0;
+        for (FileResult r : results) {
+            w.printf("%s: Full parse: %s%s Per edit: %s Failed: %d/%d (%.1f%%)%n",  //NOI18N
+                    r.name,
+                    Statistics.millis(r.full),
+                    r.valid ? "" : " (fails before the edits)",  //NOI18N
+                    r.times.length == 0 ? "n/a" : Statistics.of(r.times).toMillisString(),  //NOI18N
+                    r.failed,
+                    r.times.length,
+                    r.times.length == 0 ? 0 : 100.0 * r.failed / r.times.length);
+            for (long t : r.times) {
+                all.add(t);
+            }
+            failed += r.failed;
+        }
+        if (!all.isEmpty()) {
+            w.printf("All edits: %s Failed: %d/%d (%.1f%%)%n",  //NOI18N
+                    Statistics.of(all.stream().mapToLong((l)->l).toArray()).toMillisString(),
+                    failed,
+                    all.size(),
+                    100.0 * failed / all.size());
+        }
+        w.flush();
+    }
+
+    private void progress(
+            final String message,
+            final Object... args) {
+        progressWriter.printf(message, args);
+        progressWriter.flush();
+    }
+
+    /**
+     * Reads the edit script.
+     * @param file the script file
+     * @return the edits
+     * @throws IOException in case of I/O error or invalid script
+     */
+    static List<Edit> readScript(final File file) throws IOException {
+        final List<Edit> res = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                if (line.trim().isEmpty() || line.startsWith("#")) {  //NOI18N
+                    continue;
+                }
+                final String[] parts = line.split(" ", 3);  //NOI18N
+                try {
+                    switch (parts[0]) {
+                        case "insert":  //NOI18N
+                            res.add(new Edit(Integer.parseInt(parts[1]), 0, unescape(parts.length > 2 ? parts[2] : "")));  //NOI18N
+                            break;
+                        case "delete":  //NOI18N
+                            res.add(new Edit(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), ""));   //NOI18N
+                            break;
+                        default:
+                            throw new IllegalArgumentException(parts[0]);
+                    }
+                } catch (RuntimeException e) {
+                    throw new IOException(String.format("Invalid edit at %s:%d: %s", file, lineNo, line), e);  //NOI18N
+                }
+            }
+        }
+        return Collections.unmodifiableList(res);
+    }
+
+    private static String unescape(final String text) {
+        final StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                final char e = text.charAt(++i);
+                switch (e) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    default:
+                        sb.append(e);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A single edit, the offsets exceeding the content are clamped.
+     */
+    static final class Edit {
+        private final int offset;
+        private final int removeLength;
+        private final String insert;
+
+        Edit(
+                final int offset,
+                final int removeLength,
+                final String insert) {
+            if (offset < 0 || removeLength < 0) {
+                throw new IllegalArgumentException(String.format("%d,%d", offset, removeLength));  //NOI18N
+            }
+            this.offset = offset;
+            this.removeLength = removeLength;
+            this.insert = insert;
+        }
+
+        char[] apply(final char[] content) {
+            final int start = Math.min(offset, content.length);
+            final int end = Math.min(start + removeLength, content.length);
+            final char[] res = new char[content.length - (end - start) + insert.length()];
+            System.arraycopy(content, 0, res, 0, start);
+            insert.getChars(0, insert.length(), res, start);
+            System.arraycopy(content, end, res, start + insert.length(), content.length - end);
+            return res;
+        }
+    }
+
+    private static final class FileResult {
+        final String name;
+        final long full;
+        final boolean valid;
+        final long[] times;
+        final int failed;
+
+        FileResult(
+                final String name,
+                final long full,
+                final boolean valid,
+                final long[] times,
+                final int failed) {
+            this.name = name;
+            this.full = full;
+            this.valid = valid;
+            this.times = times;
+            this.failed = failed;
+        }
+    }
+
+    static final class Builder {
+        private final ParserImplementation parser;
+        private final ParserOptions options;
+        private final Corpus.Builder corpusBuilder;
+        private List<Edit> script;
+        private int editsCount = 100;
+        private long seed;
+        private boolean warmUp;
+
+        private Builder(
+                final ParserImplementation parser,
+                final ParserOptions options,
+                final Corpus.Builder corpusBuilder) {
+            this.parser = parser;
+            this.options = options;
+            this.corpusBuilder = corpusBuilder;
+        }
+
+        Builder setScript(List<Edit> script) {
+            this.script = script;
+            return this;
+        }
+
+        Builder setRandomEdits(int editsCount, long seed) {
+            this.script = null;
+            this.editsCount = editsCount;
+            this.seed = seed;
+            return this;
+        }
+
+        Builder setWarmUp(boolean warmUp) {
+            this.warmUp = warmUp;
+            return this;
+        }
+
+        EditReplay build() {
+            return new EditReplay(
+                    parser,
+                    corpusBuilder,
+                    options,
+                    script,
+                    editsCount,
+                    seed,
+                    warmUp);
+        }
+
+        static Builder newInstance(
+                final ParserImplementation parser,
+                final ParserOptions options,
+                final Corpus.Builder corpusBuilder) {
+            return new Builder(parser, options, corpusBuilder);
+        }
+    }
+}
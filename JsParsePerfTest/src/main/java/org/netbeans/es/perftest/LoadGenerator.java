@@ -0,0 +1,378 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Open loop load simulation.
+ * The parse jobs are submitted at a fixed arrival rate regardless of the
+ * completion of the previous jobs. The latency is measured from the intended
+ * submission time, so the queueing delay and the scheduler lag are included
+ * and the coordinated omission is avoided.
+ * @author Tomas Zezula
+ */
+final class LoadGenerator implements Runnable {
+
+    private final ParserImplementation parser;
+    private final Corpus.Builder corpusBuilder;
+    private final ParserOptions opts;
+    private final double[] rates;
+    private final long duration;
+    private final int threads;
+    private final boolean warmUp;
+    private final PrintWriter progressWriter;
+    private final PrintWriter reportWriter;
+
+    private LoadGenerator(
+            final ParserImplementation parser,
+            final Corpus.Builder corpusBuilder,
+            final ParserOptions opts,
+            final double[] rates,
+            final long duration,
+            final int threads,
+            final boolean warmUp) {
+        this.parser = parser;
+        this.corpusBuilder = corpusBuilder;
+        this.opts = opts;
+        this.rates = rates;
+        this.duration = duration;
+        this.threads = threads;
+        this.warmUp = warmUp;
+        this.progressWriter = opts.getProgressWriter();
+        this.reportWriter = opts.getReportWriter();
+    }
+
+    @Override
+    public void run() {
+        try {
+            parser.setUp(opts);
+            final Corpus corpus = corpusBuilder.build();
+            if (corpus.size() == 0) {
+                throw new IllegalStateException("No file to parse.");   //NOI18N
+            }
+            if (warmUp) {
+                progress("Warm up...%n");  //NOI18N
+                parser.startRun();
+                corpus.forEach((f) -> TestRunner.parse(parser, f, opts, new ParseResult()));
+            }
+            final RateResult[] results = new RateResult[rates.length];
+            final Workers workers = new Workers(parser, opts);
+            for (int i = 0; i < rates.length; i++) {
+                progress("Rate: %.1f/s for %ds using %d worker(s).%n",  //NOI18N
+                        rates[i],
+                        TimeUnit.NANOSECONDS.toSeconds(duration),
+                        threads);
+                workers.startRun();
+                results[i] = runAtRate(workers, corpus.getSources(), rates[i]);
+            }
+            report(results);
+            workers.merge();
+            parser.report(opts);
+        } catch (IOException ioe) {
+            TestRunner.<Void,RuntimeException>sthrow(ioe);
+        }
+    }
+
+    private RateResult runAtRate(
+            final Workers workers,
+            final List<Corpus.Source> files,
+            final double rate) {
+        final Histogram latency = new ConcurrentHistogram(3);
+        final Histogram service = new ConcurrentHistogram(3);
+        final AtomicLong failures = new AtomicLong();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+        pool.prestartAllCoreThreads();
+        final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        final long start = System.nanoTime();
+        final long end = start + duration;
+        long submitted = 0;
+        long maxLag = 0;
+        for (long intended = start; intended < end; intended = start + submitted * interval) {
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            maxLag = Math.max(maxLag, now - intended);
+            final Corpus.Source f = files.get((int) (submitted % files.size()));
+            pool.execute(new Job(intended, () -> {
+                final ParseResult res = new ParseResult();
+                final long time = workers.parse(f, res);
+                service.recordValue(time);
+                if (!res.success) {
+                    failures.incrementAndGet();
+                }
+            }, latency));
+            submitted++;
+        }
+        final int backlog = pool.getQueue().size();
+        int unfinished = 0;
+        pool.shutdown();
+        try {
+            //Overloaded pool is not drained forever, the dropped jobs are recorded
+            //with the latency they reached so far as the lower bound
+            if (!pool.awaitTermination(duration, TimeUnit.NANOSECONDS)) {
+                final List<Runnable> dropped = pool.shutdownNow();
+                final long now = System.nanoTime();
+                for (Runnable r : dropped) {
+                    latency.recordValue(now - ((Job) r).intended);
+                }
+                unfinished = dropped.size();
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        final long elapsed = System.nanoTime() - start;
+        return new RateResult(
+                rate,
+                submitted,
+                service.getTotalCount(),
+                failures.get(),
+                backlog,
+                unfinished,
+                maxLag,
+                elapsed,
+                latency,
+                service);
+    }
+
+    private void report(final RateResult[] results) {
+        final PrintWriter w = reportWriter;
+        w.println("########################################");
+        w.printf("Executed: %s%n", new Date());
+        w.printf("Parser: %s%s%n",  //NOI18N
+                parser.getName(),
+                opts.getParserSpecificOptions().isEmpty() ?
+                        "" :    //NOI18N
+                        " (" + String.join(", ", opts.getParserSpecificOptions()) + ")");    //NOI18N
+        w.printf("Open loop load: %d worker(s) %ds per rate%s%n",    //NOI18N
+                threads,
+                TimeUnit.NANOSECONDS.toSeconds(duration),
+                warmUp ? " (warmed up)" : "");   //NOI18N
+        final File source = corpusBuilder.getSource();
+        w.printf(source.isDirectory() ?
+            "Tested files in directory: %s%n" :
+            "Tested file: %s%n",
+                source.getName());
+        w.println("########################################");
+        for (RateResult r : results) {
+            w.printf("Rate: %.1f/s Achieved: %.1f/s Submitted: %d Completed: %d Failed: %d Backlog at end: %d Unfinished: %d Max scheduler lag: %s%n", //NOI18N
+                    r.rate,
+                    r.completed * (double) TimeUnit.SECONDS.toNanos(1) / r.elapsed,
+                    r.submitted,
+                    r.completed,
+                    r.failed,
+                    r.backlog,
+                    r.unfinished,
+                    Statistics.millis(r.maxLag));
+            w.printf("\tLatency: %s%n", percentiles(r.latency));    //NOI18N
+            w.printf("\tService: %s%n", percentiles(r.service));    //NOI18N
+        }
+        w.flush();
+    }
+
+    private static String percentiles(final Histogram h) {
+        if (h.getTotalCount() == 0) {
+            return "n/a";   //NOI18N
+        }
+        return String.format("p50: %s p90: %s p99: %s p99.9: %s Max: %s",   //NOI18N
+                Statistics.millis(h.getValueAtPercentile(50)),
+                Statistics.millis(h.getValueAtPercentile(90)),
+                Statistics.millis(h.getValueAtPercentile(99)),
+                Statistics.millis(h.getValueAtPercentile(99.9)),
+                Statistics.millis(h.getMaxValue()));
+    }
+
+    private void progress(
+            final String message,
+            final Object... args) {
+        progressWriter.printf(message, args);
+        progressWriter.flush();
+    }
+
+    /**
+     * The parse job recording the latency from its intended start.
+     */
+    private static final class Job implements Runnable {
+        final long intended;
+        private final Runnable work;
+        private final Histogram latency;
+
+        Job(
+                final long intended,
+                final Runnable work,
+                final Histogram latency) {
+            this.intended = intended;
+            this.work = work;
+            this.latency = latency;
+        }
+
+        @Override
+        public void run() {
+            work.run();
+            latency.recordValue(System.nanoTime() - intended);
+        }
+    }
+
+    private static final class RateResult {
+        final double rate;
+        final long submitted;
+        final long completed;
+        final long failed;
+        final int backlog;
+        final int unfinished;
+        final long maxLag;
+        final long elapsed;
+        final Histogram latency;
+        final Histogram service;
+
+        RateResult(
+                final double rate,
+                final long submitted,
+                final long completed,
+                final long failed,
+                final int backlog,
+                final int unfinished,
+                final long maxLag,
+                final long elapsed,
+                final Histogram latency,
+                final Histogram service) {
+            this.rate = rate;
+            this.submitted = submitted;
+            this.completed = completed;
+            this.failed = failed;
+            this.backlog = backlog;
+            this.unfinished = unfinished;
+            this.maxLag = maxLag;
+            this.elapsed = elapsed;
+            this.latency = latency;
+            this.service = service;
+        }
+    }
+
+    static final class Builder {
+        private final ParserImplementation parser;
+        private final ParserOptions options;
+        private final Corpus.Builder corpusBuilder;
+        private double[] rates;
+        private long duration = TimeUnit.SECONDS.toNanos(10);
+        private int threads = 1;
+        private boolean warmUp;
+
+        private Builder(
+                final ParserImplementation parser,
+                final ParserOptions options,
+                final Corpus.Builder corpusBuilder) {
+            this.parser = parser;
+            this.options = options;
+            this.corpusBuilder = corpusBuilder;
+        }
+
+        /**
+         * Sets the arrival rates to test.
+         * @param rates the rates in parse requests per second
+         * @return the {@link Builder}
+         */
+        Builder setRates(double... rates) {
+            this.rates = rates;
+            return this;
+        }
+
+        /**
+         * Sets the time each rate is tested.
+         * @param duration the duration in seconds
+         * @return the {@link Builder}
+         */
+        Builder setDuration(long duration) {
+            this.duration = TimeUnit.SECONDS.toNanos(duration);
+            return this;
+        }
+
+        Builder setThreads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        Builder setWarmUp(boolean warmUp) {
+            this.warmUp = warmUp;
+            return this;
+        }
+
+        LoadGenerator build() {
+            if (rates == null || rates.length == 0) {
+                throw new IllegalStateException("No rate.");   //NOI18N
+            }
+            return new LoadGenerator(
+                    parser,
+                    corpusBuilder,
+                    options,
+                    rates,
+                    duration,
+                    threads,
+                    warmUp);
+        }
+
+        static Builder newInstance(
+                final ParserImplementation parser,
+                final ParserOptions options,
+                final Corpus.Builder corpusBuilder) {
+            return new Builder(parser, options, corpusBuilder);
+        }
+    }
+}
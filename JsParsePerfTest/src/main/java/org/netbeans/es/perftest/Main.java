@@ -44,6 +44,10 @@ package org.netbeans.es.perftest;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.ServiceLoader;
@@ -60,10 +64,31 @@ public class Main {
         final Queue<String> parserOptions = new ArrayDeque<>();
         ParserImplementation parser = null;
         File source = null;
+        Corpus.Builder corpus = null;
         boolean warmUp = false;
         File report = null;
         File progress = null;
+        File data = null;
+        File baseline = null;
+        double baselineThreshold = 0.05;
+        final List<String> includes = new ArrayList<>();
+        final List<String> excludes = new ArrayList<>();
+        int maxFiles = Integer.MAX_VALUE;
+        long minSize = 0;
+        long maxSize = Long.MAX_VALUE;
+        Corpus.Order corpusOrder = Corpus.Order.NAME;
+        long corpusSeed = 0;
+        List<EditReplay.Edit> editScript = null;
+        int editsCount = -1;
+        long editsSeed = 0;
+        double[] loadRates = null;
+        long loadDuration = 10;
+        ComparisonRunner.Order compareOrder = null;
+        long compareSeed = 0;
         Integer runs = null;
+        int threads = 1;
+        double warmUpTolerance = -1;
+        long warmUpMaxTime = 0;
         try {
             for (int i=0; i< args.length; i++) {
                 switch (args[i]) {
@@ -75,6 +100,19 @@ public class Main {
                         warmUp = true;
                         break;
                     }
+                    case "-W": {    //NOI18N
+                        final String option = (++i < args.length) ? args[i] : null;
+                        if (option == null) {
+                            throw new IllegalArgumentException("-W");
+                        }
+                        final String[] parts = ParserOptions.splitParserArg(option);
+                        warmUpTolerance = Double.parseDouble(parts[0]) / 100;
+                        warmUpMaxTime = parts.length > 1 ? Long.parseLong(parts[1]) : 300;
+                        if (warmUpTolerance <= 0 || warmUpMaxTime <= 0) {
+                            throw new IllegalArgumentException("-W");
+                        }
+                        break;
+                    }
                     case "-p": {    //NOI18N
                         final String parserName = (++i < args.length) ? args[i] : null;
                         parser = parserName == null ? null : findParser(parserName);
@@ -89,6 +127,119 @@ public class Main {
                         report = f;
                         break;
                     }
+                    case "-d": {    //NOI18N
+                        final String fileName = (++i < args.length) ? args[i] : null;
+                        if (fileName == null) {
+                            throw new IllegalArgumentException("-d");
+                        }
+                        data = new File(fileName);
+                        break;
+                    }
+                    case "-b": {    //NOI18N
+                        final String option = (++i < args.length) ? args[i] : null;
+                        if (option == null) {
+                            throw new IllegalArgumentException("-b");
+                        }
+                        //The path may contain commas, the threshold follows the last one
+                        final int comma = option.lastIndexOf(',');  //NOI18N
+                        String path = option;
+                        if (comma >= 0) {
+                            try {
+                                baselineThreshold = Double.parseDouble(option.substring(comma + 1)) / 100;
+                                path = option.substring(0, comma);
+                            } catch (NumberFormatException nfe) {
+                                //No threshold, the comma is a part of the path
+                            }
+                        }
+                        baseline = new File(path);
+                        if (!baseline.canRead() || baselineThreshold < 0) {
+                            throw new IllegalArgumentException("-b");
+                        }
+                        break;
+                    }
+                    case "-c": {    //NOI18N
+                        final String option = (++i < args.length) ? args[i] : null;
+                        if (option == null) {
+                            throw new IllegalArgumentException("-c");
+                        }
+                        final String[] parts = ParserOptions.splitParserArg(option);
+                        compareOrder = ComparisonRunner.Order.valueOf(parts[0].toUpperCase());
+                        compareSeed = parts.length > 1 ? Long.parseLong(parts[1]) : System.nanoTime();
+                        break;
+                    }
+                    case "-i": {    //NOI18N
+                        final String glob = (++i < args.length) ? args[i] : null;
+                        if (glob == null) {
+                            throw new IllegalArgumentException("-i");
+                        }
+                        includes.add(glob);
+                        break;
+                    }
+                    case "-x": {    //NOI18N
+                        final String glob = (++i < args.length) ? args[i] : null;
+                        if (glob == null) {
+                            throw new IllegalArgumentException("-x");
+                        }
+                        excludes.add(glob);
+                        break;
+                    }
+                    case "-n": {    //NOI18N
+                        final String count = (++i < args.length) ? args[i] : null;
+                        if (count == null) {
+                            throw new IllegalArgumentException("-n");
+                        }
+                        maxFiles = Integer.parseInt(count);
+                        break;
+                    }
+                    case "-s": {    //NOI18N
+                        final String option = (++i < args.length) ? args[i] : null;
+                        if (option == null) {
+                            throw new IllegalArgumentException("-s");
+                        }
+                        final String[] parts = ParserOptions.splitParserArg(option);
+                        minSize = parts[0].isEmpty() ? 0 : Long.parseLong(parts[0]);
+                        maxSize = parts.length > 1 ? Long.parseLong(parts[1]) : Long.MAX_VALUE;
+                        break;
+                    }
+                    case "-O": {    //NOI18N
+                        final String option = (++i < args.length) ? args[i] : null;
+                        if (option == null) {
+                            throw new IllegalArgumentException("-O");
+                        }
+                        final String[] parts = ParserOptions.splitParserArg(option);
+                        corpusOrder = Corpus.Order.valueOf(parts[0].toUpperCase());
+                        corpusSeed = parts.length > 1 ? Long.parseLong(parts[1]) : System.nanoTime();
+                        break;
+                    }
+                    case "-E": {    //NOI18N
+                        final String option = (++i < args.length) ? args[i] : null;
+                        if (option == null) {
+                            throw new IllegalArgumentException("-E");
+                        }
+                        final String[] parts = ParserOptions.splitParserArg(option);
+                        if (parts[0].chars().allMatch(Character::isDigit)) {
+                            editsCount = Integer.parseInt(parts[0]);
+                            editsSeed = parts.length > 1 ? Long.parseLong(parts[1]) : System.nanoTime();
+                        } else {
+                            editScript = EditReplay.readScript(new File(option));
+                        }
+                        break;
+                    }
+                    case "-L": {    //NOI18N
+                        final String option = (++i < args.length) ? args[i] : null;
+                        if (option == null) {
+                            throw new IllegalArgumentException("-L");
+                        }
+                        final String[] parts = ParserOptions.splitParserArg(option);
+                        loadRates = Arrays.stream(parts[0].split(":"))    //NOI18N
+                                .mapToDouble(Double::parseDouble)
+                                .toArray();
+                        loadDuration = parts.length > 1 ? Long.parseLong(parts[1]) : 10;
+                        if (loadDuration <= 0 || Arrays.stream(loadRates).anyMatch((r) -> r <= 0)) {
+                            throw new IllegalArgumentException("-L");
+                        }
+                        break;
+                    }
                     case "-o": {
                         final String option = (++i < args.length) ? args[i] : null;
                         if (option == null) {
@@ -97,6 +248,17 @@ public class Main {
                         parserOptions.offer(option);
                         break;
                     }
+                    case "-t": {    //NOI18N
+                        final String count = (++i < args.length) ? args[i] : null;
+                        if (count == null) {
+                            throw new IllegalArgumentException("-t");
+                        }
+                        threads = Integer.parseInt(count);
+                        if (threads < 1) {
+                            throw new IllegalArgumentException("-t");
+                        }
+                        break;
+                    }
                     case "-l": {    //NOI18N
                         final String fileName = (++i < args.length) ? args[i] : null;
                         final File f = fileName == null ? null : new File(fileName);
@@ -116,6 +278,15 @@ public class Main {
                         }
                 }
             }
+            if (compareOrder != null && (threads > 1 || data != null || baseline != null || warmUpTolerance > 0)) {
+                throw new IllegalArgumentException("-c");
+            }
+            if ((editScript != null || editsCount >= 0) && (loadRates != null || compareOrder != null || threads > 1 || data != null || baseline != null || warmUpTolerance > 0)) {
+                throw new IllegalArgumentException("-E");
+            }
+            if (loadRates != null && (compareOrder != null || data != null || baseline != null || warmUpTolerance > 0)) {
+                throw new IllegalArgumentException("-L");
+            }
             if (parser == null) {
                 parser = findParser(AntlrParser.NAME);
             }
@@ -123,7 +294,12 @@ public class Main {
                 throw new IllegalStateException();
             }
             if (!parserOptions.isEmpty()) {
-                final Set<String> supportedOptions = parser.getOptions().keySet();
+                final Set<String> supportedOptions = new HashSet<>(parser.getOptions().keySet());
+                if (compareOrder != null) {
+                    for (ParserImplementation p : ServiceLoader.load(ParserImplementation.class)) {
+                        supportedOptions.addAll(p.getOptions().keySet());
+                    }
+                }
                 for (String parserOption : parserOptions) {
                     parserOption = ParserOptions.splitParserArg(parserOption)[0];
                     if (!supportedOptions.contains(parserOption)) {
@@ -131,20 +307,103 @@ public class Main {
                     }
                 }
             }
+            corpus = Corpus.Builder.newInstance(source)
+                    .setSizeRange(minSize, maxSize)
+                    .setOrder(corpusOrder, corpusSeed);
+            if (maxFiles < Integer.MAX_VALUE) {
+                corpus.setMaxFiles(maxFiles);
+            }
+            includes.forEach(corpus::addInclude);
+            excludes.forEach(corpus::addExclude);
         } catch (RuntimeException re) {
             usage();
         }
         final ParserOptions options = ParserOptions.Builder.newInstance()
                 .setPrintErrors(printErrors)
+                .setThreads(threads)
                 .setParserSpecificOptions(parserOptions)
                 .setProgress(progress)
                 .setReport(report)
                 .build();
-        TestRunner.Builder.newInstance(parser, options, source)
+        if (editScript != null || editsCount >= 0) {
+            final EditReplay.Builder builder = EditReplay.Builder.newInstance(parser, options, corpus)
+                    .setWarmUp(warmUp);
+            if (editScript != null) {
+                builder.setScript(editScript);
+            } else {
+                builder.setRandomEdits(editsCount, editsSeed);
+            }
+            builder.build().run();
+            return;
+        }
+        if (loadRates != null) {
+            LoadGenerator.Builder.newInstance(parser, options, corpus)
+                    .setRates(loadRates)
+                    .setDuration(loadDuration)
+                    .setThreads(threads)
+                    .setWarmUp(warmUp)
+                    .build()
+                    .run();
+            return;
+        }
+        if (compareOrder != null) {
+            compare(parser, options, corpus, runs == null ? 1 : runs, warmUp, compareOrder, compareSeed);
+            return;
+        }
+        final TestRunner runner = TestRunner.Builder.newInstance(parser, options, source)
+                .setCorpus(corpus)
                 .setRunsCount(runs == null ? 1 : runs)
                 .setWarmUp(warmUp)
-                .build()
-                .run();
+                .setThreads(threads)
+                .setAdaptiveWarmUp(warmUpTolerance, warmUpMaxTime)
+                .setDataFile(data)
+                .setBaseline(baseline, baselineThreshold)
+                .build();
+        runner.run();
+        if (runner.hasRegression()) {
+            System.exit(2);
+        }
+    }
+
+    private static void compare(
+            final ParserImplementation reference,
+            final ParserOptions options,
+            final Corpus.Builder corpus,
+            final int runs,
+            final boolean warmUp,
+            final ComparisonRunner.Order order,
+            final long seed) {
+        final ComparisonRunner.Builder builder = ComparisonRunner.Builder.newInstance(corpus.getSource())
+                .setCorpus(corpus)
+                .setRunsCount(runs)
+                .setWarmUp(warmUp)
+                .setOrder(order, seed);
+        final List<ParserImplementation> parsers = new ArrayList<>();
+        parsers.add(reference);
+        for (ParserImplementation parser : ServiceLoader.load(ParserImplementation.class)) {
+            if (!parser.getName().equals(reference.getName())) {
+                parsers.add(parser);
+            }
+        }
+        for (ParserImplementation parser : parsers) {
+            //Each parser gets just the options it supports
+            final Set<String> supportedOptions = parser.getOptions().keySet();
+            final Queue<String> parserOptions = new ArrayDeque<>();
+            for (String option : options.getParserSpecificOptions()) {
+                if (supportedOptions.contains(ParserOptions.splitParserArg(option)[0])) {
+                    parserOptions.offer(option);
+                }
+            }
+            builder.addParser(
+                    parser,
+                    ParserOptions.Builder.newInstance()
+                        .setPrintErrors(options.isPrintError())
+                        .setParserSpecificOptions(parserOptions)
+                        .setProgress(options.getProgressWriter())
+                        .setReport(options.getReportWriter())
+                        .build());
+        }
+        builder.build().run();
     }
 
     private static ParserImplementation findParser(final String name) {
@@ -157,12 +416,24 @@ public class Main {
     }
 
     private static void usage() {
-        System.err.println("usage: JsParsePerfTest [-p parser] [-e] [-w] [-l progressFile] [-r reportFile] [-o parser specific option] source [runCount]");
+        System.err.println("usage: JsParsePerfTest [-p parser] [-e] [-w] [-W tolerance[,maxTime]] [-l progressFile] [-r reportFile] [-d dataFile] [-b baselineFile[,threshold]] [-c order[,seed]] [-i glob] [-x glob] [-n maxFiles] [-s minSize[,maxSize]] [-O order[,seed]] [-L rate[:rate...][,seconds]] [-E edits[,seed]|editScript] [-t threads] [-o parser specific option] source [runCount]");
         System.err.println("\t-p parser type 'antlr' or 'nashorn', the default is antlr.");
         System.err.println("\t-e print errors, default false.");
         System.err.println("\t-w warm up parser, default false.");
+        System.err.println("\t-W tolerance[,maxTime] warm up until the run times vary less than tolerance percent or for at most maxTime seconds, default 300.");
         System.err.println("\t-l progressFile the file to write progress into, default stdout.");
         System.err.println("\t-r reportFile the file to write report into, default stdout.");
+        System.err.println("\t-d dataFile the file to write a record per parsed file and run into, JSON Lines or CSV for the .csv extension.");
+        System.err.println("\t-b baselineFile[,threshold] compare with the data file of a previous run, exits with 2 when slower by more than threshold percent, default 5.");
+        System.err.println("\t-c order[,seed] compare all parsers in one run, order is 'interleaved' or 'random', the -p parser is the reference.");
+        System.err.println("\t-i glob include the files matching the glob relative to the source folder, can be repeated, default all javascript files.");
+        System.err.println("\t-x glob exclude the files matching the glob relative to the source folder, can be repeated.");
+        System.err.println("\t-n maxFiles parse at most maxFiles files, applied after ordering.");
+        System.err.println("\t-s minSize[,maxSize] parse only the files with size in bytes in the given range.");
+        System.err.println("\t-O order[,seed] the order of files, 'name', 'size' or 'random', default name.");
+        System.err.println("\t-L rate[:rate...][,seconds] submit parse requests at the given rates per second to -t workers and report latency percentiles, default 10 seconds per rate.");
+        System.err.println("\t-E edits[,seed]|editScript reparse after each of random edits keeping the file valid (typing into and deleting back from identifiers) or scripted edits ('insert offset text' or 'delete offset length' lines) and report per edit times.");
+        System.err.println("\t-t threads parse files concurrently and report scaling for 1, 2, 4 ... threads, each level after a discarded warm up pass, default 1.");
         System.err.println("\t-o option the parser specific option.");
         System.err.println("\tsource the file or folder to parse.");
         System.err.println("\trunCount the number of test runs, default is one.");
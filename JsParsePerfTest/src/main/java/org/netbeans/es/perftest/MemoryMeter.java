@@ -0,0 +1,109 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Thread allocation and garbage collection counters.
+ * @author Tomas Zezula
+ */
+final class MemoryMeter {
+    private static final com.sun.management.ThreadMXBean THREADS;
+    private static final List<GarbageCollectorMXBean> GCS = ManagementFactory.getGarbageCollectorMXBeans();
+    static {
+        final java.lang.management.ThreadMXBean tmx = ManagementFactory.getThreadMXBean();
+        if (tmx instanceof com.sun.management.ThreadMXBean &&
+                ((com.sun.management.ThreadMXBean)tmx).isThreadAllocatedMemorySupported()) {
+            THREADS = (com.sun.management.ThreadMXBean) tmx;
+            THREADS.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            THREADS = null;
+        }
+    }
+
+    private MemoryMeter() {
+        throw new IllegalStateException("No instance allowed.");    //NOI18N
+    }
+
+    static boolean isAllocationSupported() {
+        return THREADS != null;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the calling thread.
+     * @return the allocated bytes or -1 when not supported by the JVM
+     */
+    static long allocatedBytes() {
+        return THREADS == null ?
+                -1 :
+                THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static long gcCount() {
+        long res = 0L;
+        for (GarbageCollectorMXBean gc : GCS) {
+            res += Math.max(0, gc.getCollectionCount());
+        }
+        return res;
+    }
+
+    static long gcTime() {
+        long res = 0L;
+        for (GarbageCollectorMXBean gc : GCS) {
+            res += Math.max(0, gc.getCollectionTime());
+        }
+        return res;
+    }
+
+    static String bytes(final double bytes) {
+        if (bytes >= 1L<<20) {
+            return String.format("%.1fMB", bytes / (1L<<20));  //NOI18N
+        } else if (bytes >= 1L<<10) {
+            return String.format("%.1fKB", bytes / (1L<<10));  //NOI18N
+        } else {
+            return String.format("%.0fB", bytes);  //NOI18N
+        }
+    }
+}
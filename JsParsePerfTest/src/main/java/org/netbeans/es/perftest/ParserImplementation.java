@@ -53,6 +53,42 @@ public interface ParserImplementation {
     String getName();
     Map<String,String> getOptions();
     void setUp(ParserOptions options) throws IOException;
+    boolean isThreadSafe();
     boolean parse(File file, ParserOptions options) throws IOException;
+    boolean parse(String name, char[] content, ParserOptions options) throws IOException;
+    /**
+     * Called before each pass over the corpus, including the warm up passes,
+     * outside of the measurement.
+     */
+    default void startRun() {
+    }
+    /**
+     * Called before each parse on the same thread, outside of the measurement.
+     */
+    default void beforeParse() {
+    }
+    /**
+     * Called after each parse on the same thread, outside of the measurement.
+     * Performs the work the parse deferred, like verification or statistics.
+     */
+    default void afterParse() {
+    }
+    /**
+     * Counts the tokens of the content on the default channel, called after
+     * the measured runs not to warm up the lexer.
+     * @param name the file name
+     * @param content the file content
+     * @return the number of tokens or -1 when not supported by the parser
+     * @throws IOException in case of I/O error
+     */
+    long countTokens(String name, char[] content) throws IOException;
+    /**
+     * Adds the statistics of another instance of the same implementation,
+     * created for the concurrent workers of a parser which is not thread safe,
+     * so that a single report covers all the instances.
+     * @param other the instance to merge
+     */
+    default void merge(ParserImplementation other) {
+    }
     void report(ParserOptions options);
 }
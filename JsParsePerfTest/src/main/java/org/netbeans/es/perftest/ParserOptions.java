@@ -55,16 +55,19 @@ import java.util.Collection;
  */
 public final class ParserOptions {
     private final boolean printErrors;
+    private final int threads;
     private final Collection<? extends String> options;
     private final PrintWriter progressWriter;
     private final PrintWriter reportWriter;
 
     private ParserOptions(
         final boolean printErrors,
+        final int threads,
         final Collection<? extends String> options,
         final PrintWriter progressWriter,
         final PrintWriter reportWriter) {
         this.printErrors = printErrors;
+        this.threads = threads;
         this.options = options;
         this.progressWriter = progressWriter;
         this.reportWriter = reportWriter;
@@ -74,6 +77,14 @@ public final class ParserOptions {
         return printErrors;
     }
 
+    /**
+     * Returns the maximal number of threads parsing concurrently.
+     * @return the thread count
+     */
+    public int getThreads() {
+        return threads;
+    }
+
     public Collection<? extends String> getParserSpecificOptions() {
         return options;
     }
@@ -90,43 +101,64 @@ public final class ParserOptions {
         return parserOption.split(","); //NOI18N
     }
 
-    static final class Builder {
+    public static final class Builder {
         private boolean printErrors = false;
+        private int threads = 1;
         private PrintWriter progressWriter = defaultWriter();
         private PrintWriter reportWriter = defaultWriter();
         private Collection<? extends String> options = Collections.emptyList();
         private Builder() {}
 
-        Builder setPrintErrors(final boolean printErrors) {
+        public Builder setPrintErrors(final boolean printErrors) {
             this.printErrors = printErrors;
             return this;
         }
 
-        Builder setParserSpecificOptions(final Collection<? extends String> options) {
+        public Builder setThreads(final int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException(Integer.toString(threads));
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder setParserSpecificOptions(final Collection<? extends String> options) {
             options.getClass();
             this.options = options;
             return this;
         }
 
-        Builder setProgress(File file) throws IOException {
+        public Builder setProgress(File file) throws IOException {
             this.progressWriter = file != null ?
                     new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, true))) :
                     defaultWriter();
             return this;
         }
 
-        Builder setReport(File file) throws IOException {
+        public Builder setProgress(final PrintWriter writer) {
+            writer.getClass();
+            this.progressWriter = writer;
+            return this;
+        }
+
+        public Builder setReport(File file) throws IOException {
             this.reportWriter = file != null ?
                     new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, true))) :
                     defaultWriter();
             return this;
         }
 
-        ParserOptions build() {
-            return new ParserOptions(printErrors, options, progressWriter, reportWriter);
+        public Builder setReport(final PrintWriter writer) {
+            writer.getClass();
+            this.reportWriter = writer;
+            return this;
+        }
+
+        public ParserOptions build() {
+            return new ParserOptions(printErrors, threads, options, progressWriter, reportWriter);
         }
 
-        static Builder newInstance() {
+        public static Builder newInstance() {
             return new Builder();
         }
 
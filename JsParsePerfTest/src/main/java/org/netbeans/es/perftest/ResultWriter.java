@@ -0,0 +1,305 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Writes one machine readable record per parsed file and run.
+ * The records are queued without locking while parsing and written by
+ * {@link #flush()} between the runs, so the workers do not wait for each
+ * other nor for the I/O. The file format is chosen by the file extension,
+ * {@code .csv} produces a comma separated values file, anything else
+ * produces JSON Lines (one JSON object per line).
+ * @author Tomas Zezula
+ */
+abstract class ResultWriter implements Closeable {
+    static final String COL_PARSER = "parser";      //NOI18N
+    static final String COL_OPTIONS = "options";    //NOI18N
+    static final String COL_THREADS = "threads";    //NOI18N
+    static final String COL_RUN = "run";            //NOI18N
+    static final String COL_NAME = "name";          //NOI18N
+    static final String COL_FILE = "file";          //NOI18N
+    static final String COL_SIZE = "size";          //NOI18N
+    static final String COL_TIME = "timeNs";        //NOI18N
+    static final String COL_SUCCESS = "success";    //NOI18N
+    static final String COL_ALLOCATED = "allocatedBytes";   //NOI18N
+    static final String COL_GC_COUNT = "gcCount";   //NOI18N
+    static final String COL_GC_TIME = "gcTimeMs";   //NOI18N
+
+    private final Writer out;
+    private final Map<String,Object> fixed;
+    private final Map<String,Object> env;
+    private final Queue<Record> pending = new ConcurrentLinkedQueue<>();
+
+    private ResultWriter(
+            final Writer out,
+            final String parser,
+            final Collection<? extends String> options,
+            final int threads) {
+        this.out = out;
+        this.fixed = new LinkedHashMap<>();
+        fixed.put(COL_PARSER, parser);
+        fixed.put(COL_OPTIONS, String.join(" ", options));  //NOI18N
+        fixed.put(COL_THREADS, threads);
+        this.env = environment();
+    }
+
+    /**
+     * Queues a record for a single parse.
+     * @param run the run number
+     * @param source the parsed file
+     * @param result the parse result
+     */
+    final void write(
+            final int run,
+            final Corpus.Source source,
+            final ParseResult result) {
+        pending.add(new Record(run, source, result));
+    }
+
+    /**
+     * Writes the queued records.
+     * @throws IOException in case of I/O error
+     */
+    final synchronized void flush() throws IOException {
+        Record r;
+        while ((r = pending.poll()) != null) {
+            final Map<String,Object> record = new LinkedHashMap<>(fixed);
+            record.put(COL_RUN, r.run);
+            record.put(COL_NAME, r.source.getName());
+            record.put(COL_FILE, r.source.getFile().getPath());
+            record.put(COL_SIZE, r.source.getSize());
+            record.put(COL_TIME, r.time);
+            record.put(COL_SUCCESS, r.success);
+            record.put(COL_ALLOCATED, r.allocated);
+            record.put(COL_GC_COUNT, r.gcCount);
+            record.put(COL_GC_TIME, r.gcTime);
+            record.putAll(env);
+            write(out, record);
+        }
+        out.flush();
+    }
+
+    @Override
+    public final synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    abstract void write(Writer out, Map<String,Object> record) throws IOException;
+
+    static ResultWriter create(
+            final File file,
+            final String parser,
+            final Collection<? extends String> options,
+            final int threads) throws IOException {
+        final Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file),
+                StandardCharsets.UTF_8));
+        return file.getName().toLowerCase().endsWith(".csv") ?    //NOI18N
+                new Csv(out, parser, options, threads) :
+                new Json(out, parser, options, threads);
+    }
+
+    private static Map<String,Object> environment() {
+        final Map<String,Object> env = new LinkedHashMap<>();
+        env.put("jvm", System.getProperty("java.vm.name"));         //NOI18N
+        env.put("javaVersion", System.getProperty("java.version")); //NOI18N
+        env.put("os", String.format("%s %s",                        //NOI18N
+                System.getProperty("os.name"),                      //NOI18N
+                System.getProperty("os.arch")));                    //NOI18N
+        env.put("cores", Runtime.getRuntime().availableProcessors());   //NOI18N
+        env.put("maxHeap", Runtime.getRuntime().maxMemory());           //NOI18N
+        env.put("jvmArgs", String.join(" ",                             //NOI18N
+                ManagementFactory.getRuntimeMXBean().getInputArguments()));
+        return env;
+    }
+
+    /**
+     * A copy of the parse result, the result may be reused by the caller.
+     */
+    private static final class Record {
+        final int run;
+        final Corpus.Source source;
+        final long time;
+        final boolean success;
+        final long allocated;
+        final long gcCount;
+        final long gcTime;
+
+        Record(
+                final int run,
+                final Corpus.Source source,
+                final ParseResult result) {
+            this.run = run;
+            this.source = source;
+            this.time = result.time;
+            this.success = result.success;
+            this.allocated = result.allocated;
+            this.gcCount = result.gcCount;
+            this.gcTime = result.gcTime;
+        }
+    }
+
+    private static final class Json extends ResultWriter {
+
+        Json(
+            final Writer out,
+            final String parser,
+            final Collection<? extends String> options,
+            final int threads) {
+            super(out, parser, options, threads);
+        }
+
+        @Override
+        void write(Writer out, Map<String, Object> record) throws IOException {
+            out.write('{');
+            boolean first = true;
+            for (Map.Entry<String,Object> e : record.entrySet()) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                out.write(quote(e.getKey()));
+                out.write(':');
+                final Object value = e.getValue();
+                out.write(value instanceof Number || value instanceof Boolean ?
+                        value.toString() :
+                        quote(String.valueOf(value)));
+            }
+            out.write('}');
+            out.write('\n');
+        }
+
+        private static String quote(final String s) {
+            final StringBuilder sb = new StringBuilder(s.length() + 2);
+            sb.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                final char c = s.charAt(i);
+                switch (c) {
+                    case '"':
+                        sb.append("\\\"");  //NOI18N
+                        break;
+                    case '\\':
+                        sb.append("\\\\");  //NOI18N
+                        break;
+                    case '\n':
+                        sb.append("\\n");   //NOI18N
+                        break;
+                    case '\r':
+                        sb.append("\\r");   //NOI18N
+                        break;
+                    case '\t':
+                        sb.append("\\t");   //NOI18N
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            sb.append(String.format("\\u%04x", (int) c));  //NOI18N
+                        } else {
+                            sb.append(c);
+                        }
+                }
+            }
+            sb.append('"');
+            return sb.toString();
+        }
+    }
+
+    private static final class Csv extends ResultWriter {
+        private boolean header;
+
+        Csv(
+            final Writer out,
+            final String parser,
+            final Collection<? extends String> options,
+            final int threads) {
+            super(out, parser, options, threads);
+        }
+
+        @Override
+        void write(Writer out, Map<String, Object> record) throws IOException {
+            if (!header) {
+                writeLine(out, record.keySet());
+                header = true;
+            }
+            writeLine(out, record.values());
+        }
+
+        private static void writeLine(
+                final Writer out,
+                final Collection<?> values) throws IOException {
+            boolean first = true;
+            for (Object value : values) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                out.write(quote(String.valueOf(value)));
+            }
+            out.write('\n');
+        }
+
+        private static String quote(final String s) {
+            if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+                return s;
+            }
+            return '"' + s.replace("\"", "\"\"") + '"';    //NOI18N
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest;
+
+import java.util.Arrays;
+
+/**
+ * Descriptive statistics of a sample of measured times.
+ * @author Tomas Zezula
+ */
+final class Statistics {
+    //Two-sided 97.5% quantiles of Student's t distribution for 1..30 degrees of freedom
+    private static final double[] T_975 = {
+        12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+        2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+        2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+    private static final double Z_975 = 1.960;
+
+    private final long[] sorted;
+    private final double mean;
+    private final double stdDev;
+
+    private Statistics(final long[] samples) {
+        if (samples.length == 0) {
+            throw new IllegalArgumentException("No samples.");  //NOI18N
+        }
+        this.sorted = samples.clone();
+        Arrays.sort(this.sorted);
+        double sum = 0;
+        for (long s : sorted) {
+            sum += s;
+        }
+        this.mean = sum / sorted.length;
+        double sq = 0;
+        for (long s : sorted) {
+            final double d = s - mean;
+            sq += d * d;
+        }
+        this.stdDev = sorted.length > 1 ?
+                Math.sqrt(sq / (sorted.length - 1)) :
+                0.0;
+    }
+
+    int count() {
+        return sorted.length;
+    }
+
+    long min() {
+        return sorted[0];
+    }
+
+    long max() {
+        return sorted[sorted.length - 1];
+    }
+
+    double mean() {
+        return mean;
+    }
+
+    double median() {
+        return percentile(50);
+    }
+
+    double stdDev() {
+        return stdDev;
+    }
+
+    /**
+     * Returns the percentile using a linear interpolation between the closest ranks.
+     * @param p the percentile in the range 0..100
+     * @return the percentile value
+     */
+    double percentile(final double p) {
+        if (p < 0 || p > 100) {
+            throw new IllegalArgumentException(Double.toString(p));
+        }
+        final double rank = p / 100.0 * (sorted.length - 1);
+        final int lo = (int) Math.floor(rank);
+        final int hi = (int) Math.ceil(rank);
+        return sorted[lo] + (rank - lo) * (sorted[hi] - sorted[lo]);
+    }
+
+    /**
+     * Returns the half width of the 95% confidence interval of the mean.
+     * @return the confidence interval half width, 0 for a single sample
+     */
+    double confidence95() {
+        final int n = sorted.length;
+        if (n < 2) {
+            return 0.0;
+        }
+        final double t = n - 1 <= T_975.length ? T_975[n - 2] : Z_975;
+        return t * stdDev / Math.sqrt(n);
+    }
+
+    /**
+     * Formats the statistics, the samples are expected to be in nanoseconds.
+     * @return the formatted statistics in milliseconds
+     */
+    String toMillisString() {
+        return String.format(
+                "Min: %s Median: %s P90: %s P99: %s Max: %s Mean: %s +/- %s (95%% CI) StdDev: %s",  //NOI18N
+                millis(min()),
+                millis(median()),
+                millis(percentile(90)),
+                millis(percentile(99)),
+                millis(max()),
+                millis(mean()),
+                millis(confidence95()),
+                millis(stdDev()));
+    }
+
+    /**
+     * Computes the two-sided p-value of the Mann-Whitney U test using the
+     * normal approximation with tie and continuity correction.
+     * @param a the first sample
+     * @param b the second sample
+     * @return the p-value, 1 when the samples cannot be distinguished
+     */
+    static double mannWhitneyP(final long[] a, final long[] b) {
+        final int n1 = a.length;
+        final int n2 = b.length;
+        final int n = n1 + n2;
+        if (n1 == 0 || n2 == 0) {
+            return 1.0;
+        }
+        final long[][] all = new long[n][];
+        for (int i = 0; i < n1; i++) {
+            all[i] = new long[] {a[i], 0};
+        }
+        for (int i = 0; i < n2; i++) {
+            all[n1 + i] = new long[] {b[i], 1};
+        }
+        Arrays.sort(all, (x, y) -> Long.compare(x[0], y[0]));
+        double rankSumA = 0;
+        double ties = 0;
+        for (int i = 0; i < n;) {
+            int j = i;
+            while (j + 1 < n && all[j + 1][0] == all[i][0]) {
+                j++;
+            }
+            final double rank = (i + j) / 2.0 + 1;
+            final int t = j - i + 1;
+            ties += (double) t * t * t - t;
+            for (int k = i; k <= j; k++) {
+                if (all[k][1] == 0) {
+                    rankSumA += rank;
+                }
+            }
+            i = j + 1;
+        }
+        final double u = rankSumA - n1 * (n1 + 1) / 2.0;
+        final double mu = n1 * (double) n2 / 2.0;
+        final double sigma = Math.sqrt(n1 * (double) n2 / 12.0 * ((n + 1) - ties / ((double) n * (n - 1))));
+        if (sigma == 0) {
+            return 1.0;
+        }
+        final double z = Math.max(0, Math.abs(u - mu) - 0.5) / sigma;
+        return Math.min(1.0, 2 * (1 - normalCdf(z)));
+    }
+
+    /**
+     * Returns the smallest p-value {@link #mannWhitneyP} gives for the sample
+     * sizes, reached when the samples are completely separated.
+     * @param n1 the size of the first sample
+     * @param n2 the size of the second sample
+     * @return the smallest p-value
+     */
+    static double mannWhitneyMinP(final int n1, final int n2) {
+        final long[] a = new long[n1];
+        final long[] b = new long[n2];
+        for (int i = 0; i < n1; i++) {
+            a[i] = i;
+        }
+        for (int i = 0; i < n2; i++) {
+            b[i] = n1 + i;
+        }
+        return mannWhitneyP(a, b);
+    }
+
+    private static double normalCdf(final double z) {
+        //Abramowitz and Stegun 7.1.26
+        final double x = Math.abs(z) / Math.sqrt(2);
+        final double t = 1 / (1 + 0.3275911 * x);
+        final double erf = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741 + t * (-1.453152027 + t * 1.061405429)))) * Math.exp(-x * x);
+        return z >= 0 ? (1 + erf) / 2 : (1 - erf) / 2;
+    }
+
+    static Statistics of(final long... samples) {
+        return new Statistics(samples);
+    }
+
+    static String millis(final double nanos) {
+        return String.format("%.3fms", nanos / 1_000_000);    //NOI18N
+    }
+}
@@ -44,91 +44,283 @@ package org.netbeans.es.perftest;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 final class TestRunner implements Runnable {
+    private static final int WARM_UP_WINDOW = 5;
+    private static final int COST_RANKING_SIZE = 10;
+
     private final ParserImplementation parser;
     private final File source;
+    private final Corpus.Builder corpusBuilder;
     private final ParserOptions opts;
     private final int runs;
     private final boolean warmUp;
+    private final int threads;
+    private final double warmUpTolerance;
+    private final long warmUpMaxTime;
+    private final File dataFile;
+    private final File baselineFile;
+    private final double baselineThreshold;
     private final PrintWriter progressWriter;
     private final PrintWriter reportWriter;
+    private ResultWriter resultWriter;
+    private boolean regression;
 
     private TestRunner(
             final ParserImplementation parser,
-            final File source,
+            final Corpus.Builder corpusBuilder,
             final ParserOptions opts,
             final int runs,
-            final boolean warmUp) {
+            final boolean warmUp,
+            final int threads,
+            final double warmUpTolerance,
+            final long warmUpMaxTime,
+            final File dataFile,
+            final File baselineFile,
+            final double baselineThreshold) {
         this.parser = parser;
-        this.source = source;
+        this.source = corpusBuilder.getSource();
+        this.corpusBuilder = corpusBuilder;
         this.opts = opts;
         this.runs = runs;
         this.warmUp = warmUp;
+        this.threads = threads;
+        this.warmUpTolerance = warmUpTolerance;
+        this.warmUpMaxTime = warmUpMaxTime;
+        this.dataFile = dataFile;
+        this.baselineFile = baselineFile;
+        this.baselineThreshold = baselineThreshold;
         this.progressWriter = opts.getProgressWriter();
         this.reportWriter = opts.getReportWriter();
     }
 
 
+    /**
+     * Returns true if the run is significantly slower than the baseline.
+     * @return true in case of regression
+     */
+    boolean hasRegression() {
+        return regression;
+    }
+
     @Override
     public void run() {
         try {
-            final boolean[] parserRes = new boolean[1];
+            final BaselineComparison baseline = baselineFile != null ?
+                    BaselineComparison.load(
+                            baselineFile,
+                            baselineThreshold,
+                            parser.getName(),
+                            opts.getParserSpecificOptions(),
+                            threads) :
+                    null;
+            if (dataFile != null) {
+                resultWriter = ResultWriter.create(
+                        dataFile,
+                        parser.getName(),
+                        opts.getParserSpecificOptions(),
+                        threads);
+            }
+            parser.setUp(opts);
+            final long loadStart = System.nanoTime();
+            final Corpus corpus = corpusBuilder.build();
+            progress(progressWriter, "Loaded %d file(s), %d bytes in %s (%s).%n",
+                    corpus.size(),
+                    corpus.getTotalBytes(),
+                    Statistics.millis(System.nanoTime() - loadStart),
+                    corpusBuilder);
+            final ParseResult parserRes = new ParseResult();
             if (warmUp) {
                 progress(progressWriter, "Warm up...%n");
-                files(source).forEach((f)->parse(parser, f, opts, parserRes));
+                parser.startRun();
+                corpus.forEach((f)->parse(parser, f, opts, parserRes));
             }
+            final WarmUpResult warmUpResult = warmUpTolerance > 0 ?
+                    adaptiveWarmUp(corpus, parserRes) :
+                    null;
             progress(progressWriter, "Parsing %s using %s in %d round(s).%n",
                     source.getName(),
                     parser.getName(),
                     runs);
             final long[] totalTimes = new long[runs];
-            final Map<File,FileStat> timesPerFile = new TreeMap<>((f1,f2) -> {
+            final RunStat runStat = new RunStat(runs);
+            final Map<File,FileStat> timesPerFile = new ConcurrentSkipListMap<>((f1,f2) -> {
                     int res = f1.getName().compareTo(f2.getName());
                     if (res == 0) {
                         res = f1.getAbsolutePath().compareTo(f2.getAbsolutePath());
                     }
                     return res;
             });
-            parser.setUp(opts);
-            for (int i = 0; i < runs; i++) {
-                progress(progressWriter, "Run: %d%n", 1+i);
-                final int fi = i;
-                totalTimes[i] = files(source)
-//                        .limit(3000)
-                        .map((f)->{
-                            final long t = parse(parser, f, opts, parserRes);
-                            progress(progressWriter, "Parsing %s took: %dms success: %b.%n",   //NOI18N
-                                    f.getName(),
-                                    t,
-                                    parserRes[0]);
-                            FileStat ts = timesPerFile.get(f);
-                            if (ts == null) {
-                                ts = new FileStat(runs);
-                                timesPerFile.put(f, ts);
+            final Map<Integer,long[]> wallTimes = new TreeMap<>();
+            final Workers workers = new Workers(parser, opts);
+            if (threads == 1) {
+                for (int i = 0; i < runs; i++) {
+                    progress(progressWriter, "Run: %d%n", 1+i);
+                    final int fi = i;
+                    workers.startRun();
+                    runStat.start();
+                    totalTimes[i] = corpus.stream()
+                            .map((f)->parseAndRecord(workers, f, fi, timesPerFile))
+                            .reduce(0L, (a,b)->{return a + b;});
+                    runStat.stop(i);
+                    flushResults();
+                }
+            } else {
+                for (int level : threadLevels(threads)) {
+                    final long[] levelTimes = new long[runs];
+                    final ForkJoinPool pool = new ForkJoinPool(level);
+                    try {
+                        //Discarded pass, the first level would pay the JIT and DFA
+                        //warm up and the new pool threads and workers start cold
+                        progress(progressWriter, "Warm up Threads: %d%n", level);
+                        workers.startRun();
+                        pool.submit(() -> corpus.getSources().parallelStream()
+                                .forEach((f)->workers.parse(f, new ParseResult())))
+                            .get();
+                        for (int i = 0; i < runs; i++) {
+                            progress(progressWriter, "Run: %d Threads: %d%n", 1+i, level);
+                            final int fi = i;
+                            final boolean record = level == threads;
+                            workers.startRun();
+                            if (record) {
+                                runStat.start();
+                            }
+                            final long st = System.nanoTime();
+                            final long total = pool.submit(() -> corpus.getSources().parallelStream()
+                                    .map((f)->record ?
+                                            parseAndRecord(workers, f, fi, timesPerFile) :
+                                            workers.parse(f, new ParseResult()))
+                                    .reduce(0L, (a,b)->{return a + b;}))
+                                .get();
+                            levelTimes[i] = System.nanoTime() - st;
+                            if (record) {
+                                runStat.stop(i);
+                                totalTimes[i] = total;
+                                flushResults();
                             }
-                            ts.times[fi] = t;
-                            ts.res &= parserRes[0];
-                            return t;
-                        })
-                        .reduce(0L, (a,b)->{return a + b;});
+                        }
+                    } catch (InterruptedException | ExecutionException e) {
+                        TestRunner.<Void,RuntimeException>sthrow(e instanceof ExecutionException ? e.getCause() : e);
+                    } finally {
+                        pool.shutdown();
+                    }
+                    wallTimes.put(level, levelTimes);
+                }
+            }
+            //Counted after the runs, the lexer would warm up by counting
+            countTokens(corpus, timesPerFile);
+            reportHeader(reportWriter, parser, source, warmUp || warmUpResult != null, opts.getParserSpecificOptions());
+            if (warmUpResult != null) {
+                reportWarmUp(reportWriter, warmUpResult);
             }
-            reportHeader(reportWriter, parser, source, warmUp, opts.getParserSpecificOptions());
             timesPerFile.entrySet().stream().forEach((e) -> {
-                report(reportWriter, e.getKey().getName(), e.getValue().times, e.getValue().res);
+                report(reportWriter, e.getKey().getName(), e.getValue().times, e.getValue().res,
+                        e.getValue().memory() + "\t" + e.getValue().throughput());  //NOI18N
             });
-            report(reportWriter, "Whole parsing took", totalTimes, null);    //NOI18N
+            report(reportWriter, "Whole parsing took", totalTimes, null, null);    //NOI18N
+            reportThroughput(reportWriter, corpus, timesPerFile, totalTimes);
+            reportMemory(reportWriter, corpus, timesPerFile.values(), runStat);
+            if (!wallTimes.isEmpty()) {
+                reportScaling(reportWriter, corpus.size(), wallTimes);
+            }
+            if (baseline != null) {
+                final Map<String,long[]> current = new LinkedHashMap<>();
+                timesPerFile.forEach((f, stat) -> current.put(f.getPath(), stat.times));
+                regression = baseline.compare(reportWriter, current);
+            }
+            workers.merge();
             parser.report(opts);
         } catch (IOException ioe) {
             TestRunner.<Void,RuntimeException>sthrow(ioe);
+        } finally {
+            if (resultWriter != null) {
+                try {
+                    resultWriter.close();
+                } catch (IOException ioe) {
+                    TestRunner.<Void,RuntimeException>sthrow(ioe);
+                }
+            }
+        }
+    }
+
+    /**
+     * Repeats passes over the corpus until the coefficient of variation of the
+     * last {@link #WARM_UP_WINDOW} pass times drops under the tolerance or until
+     * the time cap is exceeded.
+     */
+    private WarmUpResult adaptiveWarmUp(
+            final Corpus corpus,
+            final ParseResult parserRes) {
+        progress(progressWriter, "Adaptive warm up, tolerance: %.1f%%, max time: %ds...%n",
+                warmUpTolerance * 100,
+                TimeUnit.NANOSECONDS.toSeconds(warmUpMaxTime));
+        final List<Long> times = new ArrayList<>();
+        final long deadline = System.nanoTime() + warmUpMaxTime;
+        Statistics window = null;
+        boolean steady = false;
+        while (!steady && System.nanoTime() < deadline) {
+            parser.startRun();
+            final long t = corpus.stream()
+                    .map((f)->parse(parser, f, opts, parserRes))
+                    .reduce(0L, (a,b)->{return a + b;});
+            times.add(t);
+            if (times.size() >= WARM_UP_WINDOW) {
+                window = Statistics.of(times.subList(times.size() - WARM_UP_WINDOW, times.size())
+                        .stream()
+                        .mapToLong((l)->l)
+                        .toArray());
+                steady = window.stdDev() <= warmUpTolerance * window.mean();
+            }
+            progress(progressWriter, "Warm up iteration %d took: %s%n",
+                    times.size(),
+                    Statistics.millis(t));
+        }
+        return new WarmUpResult(
+                times.size(),
+                steady,
+                times.get(0),
+                window == null ?
+                    times.get(times.size() - 1) :
+                    window.mean());
+    }
+
+    private long parseAndRecord(
+            final Workers workers,
+            final Corpus.Source f,
+            final int run,
+            final Map<File,FileStat> timesPerFile) {
+        final ParseResult parserRes = new ParseResult();
+        final long t = workers.parse(f, parserRes);
+        progress(progressWriter, "Parsing %s took: %s success: %b.%n",   //NOI18N
+                f.getName(),
+                Statistics.millis(t),
+                parserRes.success);
+        timesPerFile.computeIfAbsent(f.getFile(), (k) -> new FileStat(runs, f.getSize(), f.getLines()))
+                .record(run, parserRes);
+        if (resultWriter != null) {
+            resultWriter.write(1+run, f, parserRes);
         }
+        return t;
+    }
 
+    /**
+     * Writes the records of the finished run, outside of the measurement.
+     */
+    private void flushResults() throws IOException {
+        if (resultWriter != null) {
+            resultWriter.flush();
+        }
     }
 
     private static void progress(
@@ -173,18 +365,52 @@ final class TestRunner implements Runnable {
         w.flush();
     }
 
+    private static void reportWarmUp(
+            final PrintWriter w,
+            final WarmUpResult res) {
+        w.printf("Warm up: %d iteration(s) Steady state: %b First: %s Steady: %s First/Steady: %.2f%n",  //NOI18N
+                res.iterations,
+                res.steady,
+                Statistics.millis(res.first),
+                Statistics.millis(res.steadyMean),
+                res.steadyMean == 0 ? 0 : res.first / res.steadyMean);
+        w.flush();
+    }
+
+    private static void reportScaling(
+            final PrintWriter w,
+            final int filesCount,
+            final Map<Integer,long[]> wallTimes) {
+        w.println("Scaling (wall clock):");  //NOI18N
+        final double baseMean = Statistics.of(wallTimes.values().iterator().next()).mean();
+        wallTimes.entrySet().stream().forEach((e) -> {
+            final Statistics stat = Statistics.of(e.getValue());
+            final double speedUp = stat.mean() == 0 ? 0 : baseMean / stat.mean();
+            w.printf("Threads: %d Mean: %s +/- %s Throughput: %.1f files/s Speedup: %.2f Efficiency: %.0f%%%n",  //NOI18N
+                    e.getKey(),
+                    Statistics.millis(stat.mean()),
+                    Statistics.millis(stat.confidence95()),
+                    stat.mean() == 0 ? 0 : filesCount * 1e9 / stat.mean(),
+                    speedUp,
+                    100.0 * speedUp / e.getKey());
+        });
+        w.flush();
+    }
+
     private static void report(
             final PrintWriter w,
             final String message,
             final long[] times,
-            final Boolean res) {
+            final Boolean res,
+            final String memory) {
         w.printf("%s:",message);           //NOI18N
-        long total = 0L;
         for (int i=0; i< times.length; i++) {
-            total+=times[i];
-            w.printf(" %d : %dms", 1+i, times[i]); //NOI18N
+            w.printf(" %d : %s", 1+i, Statistics.millis(times[i])); //NOI18N
+        }
+        w.printf("\t\t\t%s", Statistics.of(times).toMillisString());
+        if (memory != null) {
+            w.printf("\t%s", memory);
         }
-        w.printf("\t\t\tAvg : %dms",(total/times.length));
         if (res != null) {
             w.printf("\tSuccess: %b", res);
         }
@@ -192,30 +418,149 @@ final class TestRunner implements Runnable {
         w.flush();
     }
 
-    private static long parse (
+    private static void reportThroughput(
+            final PrintWriter w,
+            final Corpus corpus,
+            final Map<File,FileStat> stats,
+            final long[] totalTimes) {
+        long tokens = 0L;
+        for (FileStat fs : stats.values()) {
+            tokens = tokens < 0 || fs.tokens < 0 ? -1 : tokens + fs.tokens;
+        }
+        w.printf("Throughput: %s%n",   //NOI18N
+                throughput(Statistics.of(totalTimes).median(), corpus.getTotalBytes(), corpus.getTotalLines(), tokens));
+        final List<Map.Entry<File,FileStat>> ranked = new ArrayList<>(stats.entrySet());
+        ranked.sort((a, b) -> Double.compare(b.getValue().nsPerByte(), a.getValue().nsPerByte()));
+        final double corpusNsPerByte = corpus.getTotalBytes() == 0 ?
+                0 :
+                Statistics.of(totalTimes).median() / corpus.getTotalBytes();
+        w.printf("Most expensive files per byte (corpus: %.1fns/B):%n", corpusNsPerByte);  //NOI18N
+        ranked.stream()
+                .limit(COST_RANKING_SIZE)
+                .forEach((e) -> {
+                    final FileStat fs = e.getValue();
+                    w.printf("\t%s: %.1fns/B %.1fx corpus %s %d line(s)%n",  //NOI18N
+                            e.getKey().getName(),
+                            fs.nsPerByte(),
+                            corpusNsPerByte == 0 ? 0 : fs.nsPerByte() / corpusNsPerByte,
+                            MemoryMeter.bytes(fs.size),
+                            fs.lines);
+                });
+        w.flush();
+    }
+
+    private static String throughput(
+            final double nanos,
+            final long bytes,
+            final long lines,
+            final long tokens) {
+        final double seconds = nanos / TimeUnit.SECONDS.toNanos(1);
+        if (seconds <= 0) {
+            return "n/a";   //NOI18N
+        }
+        final StringBuilder sb = new StringBuilder();
+        sb.append(MemoryMeter.bytes(bytes / seconds)).append("/s ")   //NOI18N
+                .append(String.format("%.0f lines/s", lines / seconds));    //NOI18N
+        if (tokens >= 0) {
+            sb.append(String.format(" %.0f tokens/s", tokens / seconds));  //NOI18N
+        }
+        return sb.toString();
+    }
+
+    private static void reportMemory(
+            final PrintWriter w,
+            final Corpus corpus,
+            final Collection<? extends FileStat> stats,
+            final RunStat runStat) {
+        long allocated = 0L;
+        for (FileStat fs : stats) {
+            for (long a : fs.allocated) {
+                allocated += a;
+            }
+        }
+        final double perRun = ((double) allocated) / runStat.wallTimes.length;
+        final long gcTime = sum(runStat.gcTimes);
+        final long wallTime = sum(runStat.wallTimes);
+        w.printf("Memory: Allocated: %s/run %s/file %.1f B/source byte GC: %.1f collection(s)/run %s/run Overhead: %.1f%%%n", //NOI18N
+                MemoryMeter.bytes(perRun),
+                MemoryMeter.bytes(corpus.size() == 0 ? 0 : perRun / corpus.size()),
+                corpus.getTotalBytes() == 0 ? 0 : perRun / corpus.getTotalBytes(),
+                ((double) sum(runStat.gcCounts)) / runStat.gcCounts.length,
+                Statistics.millis(TimeUnit.MILLISECONDS.toNanos(gcTime) / (double) runStat.gcTimes.length),
+                wallTime == 0 ? 0 : 100.0 * TimeUnit.MILLISECONDS.toNanos(gcTime) / wallTime);
+        w.flush();
+    }
+
+    private static long sum(final long[] values) {
+        long res = 0L;
+        for (long v : values) {
+            res += v;
+        }
+        return res;
+    }
+
+    private void countTokens(
+            final Corpus corpus,
+            final Map<File,FileStat> stats) throws IOException {
+        for (Corpus.Source f : corpus) {
+            final FileStat fs = stats.get(f.getFile());
+            if (fs == null) {
+                continue;
+            }
+            final long count = parser.countTokens(f.getPath(), f.getContent());
+            if (count < 0) {
+                break;
+            }
+            fs.tokens = count;
+        }
+    }
+
+    static long parse (
         final ParserImplementation parser,
-        final File file,
+        final Corpus.Source file,
         final ParserOptions opts,
-        final boolean[] res) {
-        long st = System.currentTimeMillis();
+        final ParseResult res) {
+        parser.beforeParse();
+        final long gcCount = MemoryMeter.gcCount();
+        final long gcTime = MemoryMeter.gcTime();
+        final long allocated = MemoryMeter.allocatedBytes();
+        long st = System.nanoTime();
         try {
-            res[0] = parser.parse(file, opts);
+            res.success = parser.parse(file.getPath(), file.getContent(), opts);
         } catch (IOException ioe) {
             TestRunner.<Void,RuntimeException>sthrow(ioe);
         }
-        long time =  System.currentTimeMillis() - st;
+        long time =  System.nanoTime() - st;
+        res.allocated = MemoryMeter.allocatedBytes() - allocated;
+        res.gcCount = MemoryMeter.gcCount() - gcCount;
+        res.gcTime = MemoryMeter.gcTime() - gcTime;
+        res.time = time;
+        parser.afterParse();
         return time;
     }
 
-    private static Stream<? extends File> files(final File source) throws IOException {
-        return source.isFile() ?
-                Stream.of(source) :
-                Files.walk(source.toPath())
-                        .filter((p)->p.getFileName().toString().toLowerCase().endsWith(".js") && p.toFile().isFile())  //NOI18N
-                        .map((p)->p.toFile());
+    private static int[] threadLevels(final int threads) {
+        final List<Integer> levels = new ArrayList<>();
+        for (int level = 1; level < threads; level <<= 1) {
+            levels.add(level);
+        }
+        levels.add(threads);
+        return levels.stream().mapToInt((l)->l).toArray();
+    }
+
+    static ParserImplementation newParser(
+            final ParserImplementation prototype,
+            final ParserOptions opts) {
+        try {
+            final ParserImplementation worker = prototype.getClass().newInstance();
+            worker.setUp(opts);
+            return worker;
+        } catch (IOException | ReflectiveOperationException e) {
+            return TestRunner.<ParserImplementation,RuntimeException>sthrow(e);
+        }
     }
 
-    private static <R,T extends Throwable> R sthrow(Throwable t) throws T {
+    static <R,T extends Throwable> R sthrow(Throwable t) throws T {
         throw (T) t;
     }
 
@@ -223,8 +568,15 @@ final class TestRunner implements Runnable {
         private final ParserImplementation parser;
         private final File source;
         private final ParserOptions options;
+        private Corpus.Builder corpusBuilder;
         private int runs = 1;
         private boolean warmUp;
+        private int threads = 1;
+        private double warmUpTolerance = -1;
+        private long warmUpMaxTime;
+        private File dataFile;
+        private File baselineFile;
+        private double baselineThreshold;
 
         private Builder(
                 final ParserImplementation parser,
@@ -235,6 +587,11 @@ final class TestRunner implements Runnable {
             this.source = source;
         }
 
+        Builder setCorpus(Corpus.Builder corpusBuilder) {
+            this.corpusBuilder = corpusBuilder;
+            return this;
+        }
+
         Builder setRunsCount(int runs) {
             this.runs = runs;
             return this;
@@ -245,13 +602,55 @@ final class TestRunner implements Runnable {
             return this;
         }
 
+        Builder setThreads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Enables the adaptive warm up.
+         * @param tolerance the allowed coefficient of variation of the warm up pass times
+         * @param maxTime the warm up time cap in seconds
+         * @return the {@link Builder}
+         */
+        Builder setAdaptiveWarmUp(double tolerance, long maxTime) {
+            this.warmUpTolerance = tolerance;
+            this.warmUpMaxTime = TimeUnit.SECONDS.toNanos(maxTime);
+            return this;
+        }
+
+        Builder setDataFile(File dataFile) {
+            this.dataFile = dataFile;
+            return this;
+        }
+
+        /**
+         * Sets the baseline to compare the results with.
+         * @param baselineFile the file written by a previous run with a data file
+         * @param threshold the allowed relative slow down
+         * @return the {@link Builder}
+         */
+        Builder setBaseline(File baselineFile, double threshold) {
+            this.baselineFile = baselineFile;
+            this.baselineThreshold = threshold;
+            return this;
+        }
+
         TestRunner build() {
             return new TestRunner(
                     parser,
-                    source,
+                    corpusBuilder != null ?
+                            corpusBuilder :
+                            Corpus.Builder.newInstance(source),
                     options,
                     runs,
-                    warmUp);
+                    warmUp,
+                    threads,
+                    warmUpTolerance,
+                    warmUpMaxTime,
+                    dataFile,
+                    baselineFile,
+                    baselineThreshold);
         }
 
         static Builder newInstance(
@@ -264,11 +663,102 @@ final class TestRunner implements Runnable {
 
     private static class FileStat {
         final long[] times;
+        final long[] allocated;
+        final long size;
+        final int lines;
+        long tokens = -1;
+        long gcCount;
+        long gcTime;
         boolean res;
 
-        FileStat(final int length) {
+        FileStat(
+                final int length,
+                final long size,
+                final int lines) {
             this.times = new long[length];
+            this.allocated = new long[length];
+            this.size = size;
+            this.lines = lines;
             this.res = true;
         }
+
+        synchronized void record(
+                final int run,
+                final ParseResult result) {
+            times[run] = result.time;
+            allocated[run] = result.allocated;
+            gcCount += result.gcCount;
+            gcTime += result.gcTime;
+            res &= result.success;
+        }
+
+        synchronized double nsPerByte() {
+            return size == 0 ? 0 : Statistics.of(times).median() / size;
+        }
+
+        synchronized String throughput() {
+            return String.format("Throughput: %s %.1fns/B",  //NOI18N
+                    TestRunner.throughput(Statistics.of(times).median(), size, lines, tokens),
+                    nsPerByte());
+        }
+
+        synchronized String memory() {
+            final double perFile = ((double) sum(allocated)) / allocated.length;
+            final long total = sum(times);
+            return String.format("Allocated: %s %.1f B/B GC: %d %s (%.1f%%)",    //NOI18N
+                    MemoryMeter.bytes(perFile),
+                    size == 0 ? 0 : perFile / size,
+                    gcCount,
+                    Statistics.millis(TimeUnit.MILLISECONDS.toNanos(gcTime)),
+                    total == 0 ? 0 : 100.0 * TimeUnit.MILLISECONDS.toNanos(gcTime) / total);
+        }
+    }
+
+    /**
+     * The wall clock time and the garbage collections of the measured runs.
+     */
+    private static final class RunStat {
+        final long[] wallTimes;
+        final long[] gcCounts;
+        final long[] gcTimes;
+        private long startTime;
+        private long startGcCount;
+        private long startGcTime;
+
+        RunStat(final int runs) {
+            this.wallTimes = new long[runs];
+            this.gcCounts = new long[runs];
+            this.gcTimes = new long[runs];
+        }
+
+        void start() {
+            startGcCount = MemoryMeter.gcCount();
+            startGcTime = MemoryMeter.gcTime();
+            startTime = System.nanoTime();
+        }
+
+        void stop(final int run) {
+            wallTimes[run] = System.nanoTime() - startTime;
+            gcCounts[run] = MemoryMeter.gcCount() - startGcCount;
+            gcTimes[run] = MemoryMeter.gcTime() - startGcTime;
+        }
+    }
+
+    private static final class WarmUpResult {
+        final int iterations;
+        final boolean steady;
+        final long first;
+        final double steadyMean;
+
+        WarmUpResult(
+                final int iterations,
+                final boolean steady,
+                final long first,
+                final double steadyMean) {
+            this.iterations = iterations;
+            this.steady = steady;
+            this.first = first;
+            this.steadyMean = steadyMean;
+        }
     }
 }
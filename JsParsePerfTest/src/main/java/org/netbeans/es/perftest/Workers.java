@@ -0,0 +1,106 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The parsers used by the concurrent workers.
+ * A thread safe parser is shared by all the workers. Otherwise a worker borrows
+ * an idle instance for each parse, the prototype first, new instances are set
+ * up on demand and reused by the later parses and thread counts. Their
+ * statistics are merged into the prototype for a single report.
+ * @author Tomas Zezula
+ */
+final class Workers {
+    private final ParserImplementation prototype;
+    private final ParserOptions opts;
+    private final Queue<ParserImplementation> idle = new ConcurrentLinkedQueue<>();
+    private final Queue<ParserImplementation> created = new ConcurrentLinkedQueue<>();
+
+    Workers(
+            final ParserImplementation prototype,
+            final ParserOptions opts) {
+        this.prototype = prototype;
+        this.opts = opts;
+        idle.add(prototype);
+    }
+
+    long parse(
+            final Corpus.Source file,
+            final ParseResult res) {
+        if (prototype.isThreadSafe()) {
+            return TestRunner.parse(prototype, file, opts, res);
+        }
+        ParserImplementation parser = idle.poll();
+        if (parser == null) {
+            parser = TestRunner.newParser(prototype, opts);
+            created.add(parser);
+        }
+        try {
+            return TestRunner.parse(parser, file, opts, res);
+        } finally {
+            idle.add(parser);
+        }
+    }
+
+    /**
+     * Notifies all the instances about the start of a pass over the corpus.
+     */
+    void startRun() {
+        prototype.startRun();
+        created.forEach(ParserImplementation::startRun);
+    }
+
+    /**
+     * Merges the statistics of the instances created for the workers into
+     * the prototype, called before the owner reports the prototype.
+     */
+    void merge() {
+        ParserImplementation p;
+        while ((p = created.poll()) != null) {
+            idle.remove(p);
+            prototype.merge(p);
+        }
+    }
+}
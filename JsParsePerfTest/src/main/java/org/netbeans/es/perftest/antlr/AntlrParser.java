@@ -44,20 +44,40 @@ package org.netbeans.es.perftest.antlr;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.antlr.v4.runtime.ANTLRFileStream;
 import org.antlr.v4.runtime.ANTLRInputStream;
 import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Parser;
 import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNConfigSet;
 import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.atn.ProfilingATNSimulator;
 import org.antlr.v4.runtime.dfa.DFA;
 import org.antlr.v4.runtime.dfa.DFAState;
+import org.antlr.v4.runtime.misc.Interval;
 import org.netbeans.es.perftest.ParserOptions;
 import org.netbeans.es.perftest.ParserImplementation;
+import org.netbeans.modules.javascript2.editor.parser6.ECMAScript6HashLexer;
 import org.netbeans.modules.javascript2.editor.parser6.ECMAScript6Lexer;
 import org.netbeans.modules.javascript2.editor.parser6.ECMAScript6Parser;
 
@@ -70,11 +90,64 @@ public class AntlrParser implements ParserImplementation {
     private static final String OPT_HISTO = "histo";    //NOI18N
     private static final String OPT_LEX = "lex";    //NOI18N
     private static final String OPT_ATNCFG_COUNT = "atncfg";    //NOI18N
+    private static final String OPT_RETAINED = "retained";  //NOI18N
+    private static final String OPT_INCREMENTAL = "incremental";    //NOI18N
+    private static final String OPT_RELEX = "relex";    //NOI18N
+    private static final String OPT_VERIFY = "verify";  //NOI18N
+    private static final String OPT_LEXER = "lexer";    //NOI18N
+    private static final String OPT_LEXCHECK = "lexcheck";  //NOI18N
+    private static final String OPT_PRATT = "pratt";    //NOI18N
+    private static final String OPT_PREDICTION = "prediction";  //NOI18N
+    private static final String OPT_DFACACHE = "dfacache";  //NOI18N
+    private static final String DFACACHE_COLD = "cold";  //NOI18N
+    private static final String OPT_DFACOLD = "dfacold";    //NOI18N
+    private static final String OPT_DFACAP = "dfacap";  //NOI18N
+    private static final String OPT_DFAGROWTH = "dfagrowth";    //NOI18N
+    private static final String OPT_PROFILE = "profile";    //NOI18N
+    private static final String OPT_FLAME = "flame";    //NOI18N
+    private static final String FLAME_TOTAL = "all.folded"; //NOI18N
+    private static final String FLAME_EXT = ".folded";  //NOI18N
+    private static final String LEXER_ANTLR = "antlr";  //NOI18N
+    private static final String LEXER_HAND = "hand";    //NOI18N
+    private static final String LEXER_HASH = "hash";    //NOI18N
 
     private boolean printHistogram = false;
+    private int timesSampling = 1;
     private boolean printAtnCfgCount = false;
     private boolean lex = false;
     private int printAtnCfgCountLimit = -1;
+    private boolean retained = false;
+    private int retainedTypesLimit = 10;
+    private final Map<String,RetainedStat> retainedPerFile = new ConcurrentSkipListMap<>();
+    private IncrementalParser incremental;
+    private IncrementalLexer relex;
+    private String lexerImpl = LEXER_ANTLR;
+    private LexerCheck lexCheck;
+    private boolean pratt;
+    private boolean prattVerify;
+    private final AtomicLong prattFiles = new AtomicLong();
+    private final AtomicLong prattFallbacks = new AtomicLong();
+    private final AtomicLong prattMismatches = new AtomicLong();
+    private Prediction prediction = Prediction.TWO_STAGE;
+    private boolean predictionReport;
+    private final Map<String,PredictionStat> predictionPerFile = new ConcurrentSkipListMap<>();
+    private File dfaCache;
+    private boolean dfaCacheCold;
+    private DfaCache.Stats dfaCacheLoaded;
+    private long dfaCacheLoadTime;
+    private FirstPass firstPass;
+    private DfaMemory dfaMemory;
+    private PredictionProfile profile;
+    private int profileLimit;
+    private File flameDir;
+    private final Map<String,CallTree> flamePerFile = new ConcurrentHashMap<>();
+    private final ThreadLocal<Runnable> deferred = new ThreadLocal<>();
+    /**
+     * The options the shared DFA was prepared for by the dfacache option.
+     * The workers set up further instances with the same options while
+     * the other instances parse, those must not clear the DFA again.
+     */
+    private static final Map<ParserOptions,Boolean> DFA_CACHE_PREPARED = new WeakHashMap<>();
 
     @Override
     public String getName() {
@@ -84,21 +157,65 @@ public class AntlrParser implements ParserImplementation {
     @Override
     public Map<String, String> getOptions() {
         final Map m =  new TreeMap<>();
-        m.put(OPT_HISTO, "prints a histogram for each parser rule");    //NOI18N
+        m.put(OPT_HISTO, "histo[,N] prints a histogram for each parser rule, with N times only every Nth rule entry");    //NOI18N
         m.put(OPT_LEX, "meassures only lexer");                         //NOI18N
         m.put(OPT_ATNCFG_COUNT,"prints ATNConfig count per decision");  //NOI18N
+        m.put(OPT_INCREMENTAL,"reparses only the top level elements changed since the previous parse of the same file, 'verify' compares with full parse, single thread only");  //NOI18N
+        m.put(OPT_RELEX,"meassures only lexer, relexes only the lines changed since the previous lex of the same file, 'verify' compares with full lex, single thread only");  //NOI18N
+        m.put(OPT_LEXER,"lexer implementation: antlr (default), hand or hash (keywords classified by a perfect hash)");  //NOI18N
+        m.put(OPT_LEXCHECK,"compares tokens of the lexer selected by 'lexer' with the generated lexer, no parsing");  //NOI18N
+        m.put(OPT_PRATT,"parses binary expressions by hand written precedence climbing, 'verify' compares the tree with the generated parser");  //NOI18N
+        m.put(OPT_PREDICTION,"prediction strategy: sll, ll, twostage (default, SLL falling back to LL) or exact (LL with exact ambiguity detection), reports the fallbacks and time per stage for each file");  //NOI18N
+        m.put(OPT_DFACACHE,"dfacache,<file>[,cold] preloads the parser DFA from the file and saves the warmed DFA into it after the runs, 'cold' starts with an empty DFA, reports time to first parse and first pass total");  //NOI18N
+        m.put(OPT_DFACOLD,"dfacold,file|run clears the shared parser and lexer DFA before each file or each run, reports the DFA growth, single thread only");  //NOI18N
+        m.put(OPT_DFACAP,"dfacap,<MB>[,lru|largest] caps the estimated parser DFA size by evicting whole decisions, least recently used (default) or largest first, reports the DFA growth, single thread only");  //NOI18N
+        m.put(OPT_DFAGROWTH,"reports the parser DFA states, configs and estimated bytes per run, measures after each file");  //NOI18N
+        m.put(OPT_PROFILE,"profile[,N] profiles the prediction, prints invocations, time, lookahead, ambiguities and context sensitivities of the N most expensive decisions with their rules and grammar lines, distorts times");  //NOI18N
+        m.put(OPT_FLAME,"flame,<dir>[,N] writes the rule self times per rule stack in the collapsed stack format of flame graph tools into the directory, a file per source file at its relative path summed over the runs and all.folded for the corpus, times in ns, with N times only every Nth rule entry");  //NOI18N
+        m.put(OPT_RETAINED,"prints retained size of parse tree and tokens per file and top N types, distorts times");  //NOI18N
         return m;
     }
 
     @Override
-    public void setUp(ParserOptions options) {
-        printHistogram = lex = printAtnCfgCount = false;
+    public void setUp(ParserOptions options) throws IOException {
+        printHistogram = lex = printAtnCfgCount = retained = false;
         printAtnCfgCountLimit = -1;
+        timesSampling = 1;
+        retainedTypesLimit = 10;
+        retainedPerFile.clear();
+        incremental = null;
+        relex = null;
+        lexerImpl = LEXER_ANTLR;
+        pratt = prattVerify = false;
+        prediction = Prediction.TWO_STAGE;
+        predictionReport = false;
+        predictionPerFile.clear();
+        prattFiles.set(0);
+        prattFallbacks.set(0);
+        prattMismatches.set(0);
+        dfaCache = null;
+        dfaCacheCold = false;
+        dfaCacheLoaded = null;
+        dfaCacheLoadTime = 0;
+        firstPass = null;
+        dfaMemory = null;
+        profile = null;
+        profileLimit = -1;
+        flameDir = null;
+        flamePerFile.clear();
+        DfaMemory.Cold dfaCold = DfaMemory.Cold.NONE;
+        long dfaCap = -1;
+        DfaMemory.Policy dfaPolicy = DfaMemory.Policy.LRU;
+        boolean dfaGrowth = false;
+        boolean check = false;
         for (String option : options.getParserSpecificOptions()) {
             final String[] splitted = ParserOptions.splitParserArg(option);
             switch (splitted[0]) {
                 case OPT_HISTO:
                     printHistogram = true;
+                    if (splitted.length > 1) {
+                        timesSampling = Integer.parseInt(splitted[1]);
+                    }
                     break;
                 case OPT_LEX:
                     lex = true;
@@ -109,47 +226,342 @@ public class AntlrParser implements ParserImplementation {
                         printAtnCfgCountLimit = Integer.parseInt(splitted[1]);
                     }
                     break;
+                case OPT_INCREMENTAL:
+                    if (splitted.length > 1 && !OPT_VERIFY.equals(splitted[1])) {
+                        throw new IllegalArgumentException(option);
+                    }
+                    incremental = new IncrementalParser(splitted.length > 1);
+                    requireSingleThread(option, options);
+                    break;
+                case OPT_RELEX:
+                    if (splitted.length > 1 && !OPT_VERIFY.equals(splitted[1])) {
+                        throw new IllegalArgumentException(option);
+                    }
+                    relex = new IncrementalLexer(splitted.length > 1);
+                    requireSingleThread(option, options);
+                    break;
+                case OPT_LEXER:
+                    if (splitted.length != 2 ||
+                            !(LEXER_ANTLR.equals(splitted[1]) ||
+                            LEXER_HAND.equals(splitted[1]) ||
+                            LEXER_HASH.equals(splitted[1]))) {
+                        throw new IllegalArgumentException(option);
+                    }
+                    lexerImpl = splitted[1];
+                    break;
+                case OPT_LEXCHECK:
+                    check = true;
+                    break;
+                case OPT_PRATT:
+                    if (splitted.length > 1 && !OPT_VERIFY.equals(splitted[1])) {
+                        throw new IllegalArgumentException(option);
+                    }
+                    pratt = true;
+                    prattVerify = splitted.length > 1;
+                    break;
+                case OPT_PREDICTION:
+                    if (splitted.length != 2) {
+                        throw new IllegalArgumentException(option);
+                    }
+                    prediction = Prediction.forName(splitted[1]);
+                    predictionReport = true;
+                    break;
+                case OPT_DFACACHE:
+                    if (splitted.length < 2 ||
+                            splitted.length > 3 ||
+                            (splitted.length == 3 && !DFACACHE_COLD.equals(splitted[2]))) {
+                        throw new IllegalArgumentException(option);
+                    }
+                    dfaCache = new File(splitted[1]);
+                    dfaCacheCold = splitted.length == 3;
+                    break;
+                case OPT_DFACOLD:
+                    if (splitted.length != 2) {
+                        throw new IllegalArgumentException(option);
+                    }
+                    dfaCold = DfaMemory.Cold.valueOf(splitted[1].toUpperCase());
+                    dfaGrowth = true;
+                    requireSingleThread(option, options);
+                    break;
+                case OPT_DFACAP:
+                    if (splitted.length < 2 || splitted.length > 3) {
+                        throw new IllegalArgumentException(option);
+                    }
+                    dfaCap = Long.parseLong(splitted[1]) << 20;
+                    if (splitted.length == 3) {
+                        dfaPolicy = DfaMemory.Policy.valueOf(splitted[2].toUpperCase());
+                    }
+                    dfaGrowth = true;
+                    requireSingleThread(option, options);
+                    break;
+                case OPT_DFAGROWTH:
+                    dfaGrowth = true;
+                    break;
+                case OPT_PROFILE:
+                    profile = new PredictionProfile(ECMAScript6Parser._ATN);
+                    if (splitted.length > 1) {
+                        profileLimit = Integer.parseInt(splitted[1]);
+                    }
+                    break;
+                case OPT_FLAME:
+                    if (splitted.length < 2 || splitted.length > 3) {
+                        throw new IllegalArgumentException(option);
+                    }
+                    flameDir = new File(splitted[1]);
+                    if (splitted.length == 3) {
+                        timesSampling = Integer.parseInt(splitted[2]);
+                    }
+                    break;
+                case OPT_RETAINED:
+                    retained = true;
+                    if (splitted.length > 1) {
+                        retainedTypesLimit = Integer.parseInt(splitted[1]);
+                    }
+                    break;
                 default:
                     throw new IllegalArgumentException(option);
             }
         }
+        if (LEXER_HASH.equals(lexerImpl)) {
+            LexerCheck.checkVocabulary();
+        }
+        lexCheck = check ?
+                new LexerCheck((in) -> createLexer(in, null)) :
+                null;
+        if (dfaCache != null) {
+            if (prepareDfaCache(options)) {
+                //Both the cold and the preloaded start begin with an empty DFA
+                ECMAScript6Parser._ATN.clearDFA();
+                if (!dfaCacheCold) {
+                    final long start = System.nanoTime();
+                    dfaCacheLoaded = DfaCache.load(
+                            ECMAScript6Parser._ATN,
+                            DfaCache.checksum(ECMAScript6Parser._serializedATN),
+                            dfaCache);
+                    dfaCacheLoadTime = System.nanoTime() - start;
+                }
+            }
+            firstPass = new FirstPass();
+        }
+        if (dfaGrowth) {
+            dfaMemory = new DfaMemory(
+                    ECMAScript6Parser._ATN,
+                    new ATN[] {ECMAScript6Lexer._ATN, ECMAScript6HashLexer._ATN},
+                    dfaCold,
+                    dfaCap,
+                    dfaPolicy);
+        }
+    }
+
+    @Override
+    public void merge(final ParserImplementation other) {
+        final AntlrParser ap = (AntlrParser) other;
+        retainedPerFile.putAll(ap.retainedPerFile);
+        ap.predictionPerFile.forEach((k, v) -> predictionPerFile.merge(k, v, PredictionStat::add));
+        ap.flamePerFile.forEach((k, v) -> flamePerFile.merge(k, v, (a, b) -> {
+            a.add(b);
+            return a;
+        }));
+        prattFiles.addAndGet(ap.prattFiles.get());
+        prattFallbacks.addAndGet(ap.prattFallbacks.get());
+        prattMismatches.addAndGet(ap.prattMismatches.get());
+        if (lexCheck != null && ap.lexCheck != null) {
+            lexCheck.add(ap.lexCheck);
+        }
+        if (profile != null && ap.profile != null) {
+            profile.add(ap.profile);
+        }
+        if (firstPass != null && ap.firstPass != null) {
+            firstPass.add(ap.firstPass);
+        }
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        //The incremental modes, the lexer check and the DFA memory keep a state
+        return incremental == null &&
+                relex == null &&
+                lexCheck == null &&
+                dfaMemory == null;
+    }
+
+    @Override
+    public void startRun() {
+        if (dfaMemory != null) {
+            dfaMemory.startRun();
+        }
+    }
+
+    @Override
+    public void beforeParse() {
+        if (dfaMemory != null) {
+            dfaMemory.beforeParse();
+        }
+    }
+
+    @Override
+    public void afterParse() {
+        if (dfaMemory != null) {
+            dfaMemory.afterParse();
+        }
+        final Runnable work = deferred.get();
+        if (work != null) {
+            deferred.remove();
+            work.run();
+        }
+    }
+
+    private static boolean prepareDfaCache(final ParserOptions options) {
+        synchronized (DFA_CACHE_PREPARED) {
+            return DFA_CACHE_PREPARED.put(options, Boolean.TRUE) == null;
+        }
+    }
+
+    /**
+     * Rejects the option modifying the shared DFA or keeping a state per file
+     * when parsing concurrently.
+     */
+    private static void requireSingleThread(
+            final String option,
+            final ParserOptions options) {
+        if (options.getThreads() > 1) {
+            throw new IllegalArgumentException(String.format(
+                    "%s requires a single thread", //NOI18N
+                    option));
+        }
+    }
+
+    /**
+     * Defers the work after the measured parse on this thread.
+     * @param work the work to run by {@link #afterParse()}
+     */
+    private void defer(final Runnable work) {
+        final Runnable prev = deferred.get();
+        deferred.set(prev == null ?
+                work :
+                () -> {
+                    prev.run();
+                    work.run();
+                });
     }
 
     @Override
     public boolean parse(File file, ParserOptions options) throws IOException {
+        return parse(new ANTLRFileStream(file.getAbsolutePath()), options);
+    }
+
+    @Override
+    public boolean parse(String name, char[] content, ParserOptions options) throws IOException {
+        if (incremental != null) {
+            return incremental.parse(name, content, options, this::defer);
+        }
+        if (relex != null) {
+            relex.lex(name, content, this::defer);
+            return true;
+        }
+        final ANTLRInputStream in = new ANTLRInputStream(content, content.length);
+        in.name = name;
+        return parse(in, options);
+    }
+
+    @Override
+    public long countTokens(String name, char[] content) {
+        final ANTLRInputStream in = new ANTLRInputStream(content, content.length);
+        in.name = name;
+        final ECMAScript6Lexer lexer = new ECMAScript6Lexer(in);
+        lexer.removeErrorListeners();
+        long count = 0;
+        for (Token t = lexer.nextToken(); t.getType() != Token.EOF; t = lexer.nextToken()) {
+            if (t.getChannel() == Token.DEFAULT_CHANNEL) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean parse(ANTLRInputStream in, ParserOptions options) {
+        if (lexCheck != null) {
+            return lexCheck.check(in);
+        }
         final ErrorListener errorListener = new ErrorListener(
                 options.getProgressWriter(),
                 options.isPrintError());
-        final ANTLRInputStream in = new ANTLRFileStream(file.getAbsolutePath());
-        final ECMAScript6Lexer lexer = new ECMAScript6Lexer(in);
-        lexer.addErrorListener(errorListener);
-        final CommonTokenStream tokens = new CommonTokenStream(lexer);
+        final CommonTokenStream tokens = new CommonTokenStream(createLexer(in, errorListener));
         if (lex) {
             //Lexer performance only
             tokens.fill();
             tokens.getTokens();
         } else {
             //Full parse performance
-            ECMAScript6Parser parser = printHistogram ?
-                    new TimesParser(tokens) :
+            final CallTree calls = flameDir != null ?
+                    new CallTree() :
+                    null;
+            ECMAScript6Parser parser = printHistogram || calls != null ?
+                    new TimesParser(tokens, timesSampling, calls) :
                     new ECMAScript6Parser(tokens);
-            parser.removeErrorListeners();
-            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
-            parser.setErrorHandler(new BailErrorStrategy());
-            ECMAScript6Parser.ProgramContext program;
-            try {
-                program = parser.program();
-            } catch (RuntimeException ex) {
-                if ((ex instanceof RuntimeException) && (ex.getCause() instanceof RecognitionException)) {
-                    tokens.reset();
-                    parser.setErrorHandler(new DefaultErrorStrategy());
-                    parser.addErrorListener(errorListener);
-                    parser.getInterpreter().setPredictionMode(PredictionMode.LL);
-                    program = parser.program();
-                } else {
-                    throw ex;
+            if (dfaMemory != null) {
+                parser.setInterpreter(dfaMemory.createSimulator(parser));
+            }
+            final ProfilingATNSimulator profiler = profile != null ?
+                    PredictionProfile.createSimulator(parser) :
+                    null;
+            if (profiler != null) {
+                parser.setInterpreter(profiler);
+            }
+            parser.setPrecedenceClimbing(pratt);
+            final PredictionStat stat = predictionReport ?
+                    new PredictionStat() :
+                    null;
+            final long start = System.nanoTime();
+            final ECMAScript6Parser.ProgramContext program = parseProgram(parser, tokens, errorListener, prediction, stat);
+            if (firstPass != null) {
+                firstPass.record(in.getSourceName(), System.nanoTime() - start);
+            }
+            if (profiler != null) {
+                profile.add(profiler);
+            }
+            if (calls != null) {
+                final String name = in.getSourceName();
+                defer(() -> flamePerFile.compute(name, (k, v) -> {
+                    if (v == null) {
+                        return calls;
+                    }
+                    v.add(calls);
+                    return v;
+                }));
+            }
+            if (stat != null) {
+                predictionPerFile.merge(in.getSourceName(), stat, PredictionStat::add);
+            }
+            if (pratt) {
+                prattFiles.incrementAndGet();
+                if (!parser.isPrecedenceClimbing()) {
+                    prattFallbacks.incrementAndGet();
+                }
+                if (prattVerify) {
+                    //The reparse by the generated parser is not measured
+                    defer(() -> {
+                        tokens.seek(0);
+                        final ECMAScript6Parser.ProgramContext expected = parseProgram(
+                                new ECMAScript6Parser(tokens),
+                                tokens,
+                                new ErrorListener(options.getProgressWriter(), false),
+                                prediction,
+                                null);
+                        if (!IncrementalParser.sameTree(expected, program)) {
+                            prattMismatches.incrementAndGet();
+                            options.getProgressWriter().printf("Precedence climbing tree differs: %s%n", in.getSourceName());    //NOI18N
+                        }
+                    });
                 }
             }
+            if (retained) {
+                defer(() -> retainedPerFile.put(
+                        in.getSourceName(),
+                        new RetainedStat(
+                                RetainedSize.measure(program, tokens),
+                                in.getText(Interval.of(0, in.size() - 1)).getBytes(StandardCharsets.UTF_8).length)));
+            }
             if (printHistogram) {
                 final PrintWriter pw = options.getProgressWriter();
                 ((TimesParser)parser).getHistogram()
@@ -162,8 +574,148 @@ public class AntlrParser implements ParserImplementation {
         return !errorListener.hasErrors();
     }
 
+    /**
+     * Parses using the prediction strategy.
+     * The two stage strategy parses by SLL with bail out and falls back to LL
+     * with error recovery, the precedence climbing is used only in the SLL stage.
+     * @param stat the stat to record the stages into or null
+     */
+    private static ECMAScript6Parser.ProgramContext parseProgram(
+            final ECMAScript6Parser parser,
+            final CommonTokenStream tokens,
+            final ErrorListener errorListener,
+            final Prediction prediction,
+            final PredictionStat stat) {
+        parser.removeErrorListeners();
+        if (prediction != Prediction.TWO_STAGE) {
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            parser.addErrorListener(errorListener);
+            parser.getInterpreter().setPredictionMode(prediction.mode);
+            //The fork reports ambiguities only when asked to
+            parser.getInterpreter().reportAmbiguities = prediction == Prediction.EXACT;
+            if (prediction == Prediction.EXACT && stat != null) {
+                parser.addErrorListener(new BaseErrorListener() {
+                    @Override
+                    public void reportAmbiguity(Parser recognizer, DFA dfa, int startIndex, int stopIndex, boolean exact, BitSet ambigAlts, ATNConfigSet configs) {
+                        if (exact) {
+                            stat.ambiguities++;
+                        }
+                    }
+                });
+            }
+            final long start = System.nanoTime();
+            final ECMAScript6Parser.ProgramContext program = parser.program();
+            if (stat != null) {
+                stat.parses++;
+                if (prediction == Prediction.SLL) {
+                    stat.sllTime += System.nanoTime() - start;
+                } else {
+                    stat.llTime += System.nanoTime() - start;
+                }
+            }
+            return program;
+        }
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(new BailErrorStrategy());
+        final long start = System.nanoTime();
+        try {
+            final ECMAScript6Parser.ProgramContext program = parser.program();
+            if (stat != null) {
+                stat.parses++;
+                stat.sllTime += System.nanoTime() - start;
+            }
+            return program;
+        } catch (RuntimeException ex) {
+            if ((ex instanceof RuntimeException) && (ex.getCause() instanceof RecognitionException)) {
+                final long bail = System.nanoTime();
+                if (stat != null) {
+                    final Token offending = ((RecognitionException) ex.getCause()).getOffendingToken();
+                    stat.parses++;
+                    stat.fallbacks++;
+                    stat.sllTime += bail - start;
+                    stat.bailAt(offending != null ?
+                            offending :
+                            parser.getCurrentToken());
+                }
+                tokens.reset();
+                parser.setPrecedenceClimbing(false);
+                parser.setErrorHandler(new DefaultErrorStrategy());
+                parser.addErrorListener(errorListener);
+                parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+                final ECMAScript6Parser.ProgramContext program = parser.program();
+                if (stat != null) {
+                    stat.llTime += System.nanoTime() - bail;
+                }
+                return program;
+            } else {
+                throw ex;
+            }
+        }
+    }
+
+    private TokenSource createLexer(
+            final CharStream in,
+            final ErrorListener errorListener) {
+        switch (lexerImpl) {
+            case LEXER_HAND:
+                return new HandWrittenLexer(in);
+            case LEXER_HASH:
+                return withErrorListener(new ECMAScript6HashLexer(in), errorListener);
+            default:
+                return withErrorListener(new ECMAScript6Lexer(in), errorListener);
+        }
+    }
+
+    private static Lexer withErrorListener(
+            final Lexer lexer,
+            final ErrorListener errorListener) {
+        if (errorListener != null) {
+            lexer.addErrorListener(errorListener);
+        } else {
+            lexer.removeErrorListeners();
+        }
+        return lexer;
+    }
+
     @Override
     public void report(ParserOptions options) {
+        if (lexCheck != null) {
+            lexCheck.report(options.getReportWriter());
+        }
+        if (predictionReport) {
+            reportPrediction(options.getReportWriter());
+        }
+        if (dfaCache != null) {
+            reportDfaCache(options.getReportWriter());
+        }
+        if (dfaMemory != null) {
+            dfaMemory.report(options.getReportWriter());
+        }
+        if (profile != null) {
+            profile.report(options.getReportWriter(), ECMAScript6Parser.ruleNames, profileLimit);
+        }
+        if (flameDir != null) {
+            reportFlame(options.getReportWriter());
+        }
+        if (pratt) {
+            final PrintWriter rw = options.getReportWriter();
+            rw.printf("%nPrecedence climbing:%n"); //NOI18N
+            rw.printf("Files: %d Fallbacks to LL: %d", prattFiles.get(), prattFallbacks.get()); //NOI18N
+            if (prattVerify) {
+                rw.printf(" Tree mismatches: %d", prattMismatches.get());   //NOI18N
+            }
+            rw.printf("%n");    //NOI18N
+            rw.flush();
+        }
+        if (incremental != null) {
+            incremental.report(options.getReportWriter());
+        }
+        if (relex != null) {
+            relex.report(options.getReportWriter());
+        }
+        if (retained) {
+            reportRetained(options.getReportWriter());
+        }
         if (printAtnCfgCount) {
             final PrintWriter rw = options.getReportWriter();
             rw.printf("%nATNConfig count per decision:%n"); //NOI18N
@@ -194,4 +746,301 @@ public class AntlrParser implements ParserImplementation {
             rw.flush();
         }
     }
+
+    private void reportPrediction(final PrintWriter rw) {
+        rw.printf("%nPrediction strategy: %s%n", prediction.getName()); //NOI18N
+        final PredictionStat total = new PredictionStat();
+        for (Map.Entry<String,PredictionStat> e : predictionPerFile.entrySet()) {
+            final PredictionStat ps = e.getValue();
+            rw.printf("%s: %s%n", e.getKey(), ps);  //NOI18N
+            total.add(ps);
+        }
+        rw.printf("Total: %s%n", total);    //NOI18N
+        if (total.parses > 0) {
+            rw.printf("Files falling back to LL: %d of %d, LL share of parse time: %.1f%%%n",  //NOI18N
+                    predictionPerFile.values().stream().filter((ps) -> ps.fallbacks > 0).count(),
+                    predictionPerFile.size(),
+                    total.sllTime + total.llTime == 0 ?
+                            0.0 :
+                            100.0 * total.llTime / (total.sllTime + total.llTime));
+        }
+        rw.flush();
+    }
+
+    private void reportDfaCache(final PrintWriter rw) {
+        rw.printf("%nDFA cache: %s%n", dfaCache.getAbsolutePath()); //NOI18N
+        if (dfaCacheLoaded != null) {
+            rw.printf("Preloaded: %s in %.3fms%n",  //NOI18N
+                    dfaCacheLoaded,
+                    dfaCacheLoadTime / 1e6);
+        } else {
+            rw.printf("Cold start: %s%n",    //NOI18N
+                    dfaCacheCold ?
+                            "cache not used" :  //NOI18N
+                            "no cache for this grammar");   //NOI18N
+        }
+        synchronized (firstPass) {
+            if (firstPass.firstFile != null) {
+                rw.printf("Time to first parse: %.3fms (%s: %.3fms + preload: %.3fms)%n",    //NOI18N
+                        (firstPass.firstTime + dfaCacheLoadTime) / 1e6,
+                        firstPass.firstFile,
+                        firstPass.firstTime / 1e6,
+                        dfaCacheLoadTime / 1e6);
+                rw.printf("First pass: %.3fms (%d files: %.3fms + preload: %.3fms)%n",  //NOI18N
+                        (firstPass.passTime + dfaCacheLoadTime) / 1e6,
+                        firstPass.files.size(),
+                        firstPass.passTime / 1e6,
+                        dfaCacheLoadTime / 1e6);
+            }
+        }
+        final long start = System.nanoTime();
+        try {
+            final DfaCache.Stats saved = DfaCache.save(
+                    ECMAScript6Parser._ATN,
+                    DfaCache.checksum(ECMAScript6Parser._serializedATN),
+                    dfaCache);
+            rw.printf("Saved: %s in %.3fms%n",  //NOI18N
+                    saved,
+                    (System.nanoTime() - start) / 1e6);
+        } catch (IOException ioe) {
+            rw.printf("Cannot save: %s%n", ioe.getMessage());   //NOI18N
+        }
+        rw.flush();
+    }
+
+    private void reportFlame(final PrintWriter rw) {
+        rw.printf("%nRule stacks: %s%n", flameDir.getAbsolutePath()); //NOI18N
+        final String[] ruleNames = ECMAScript6Parser.ruleNames;
+        final CallTree total = new CallTree();
+        try {
+            if (!flameDir.isDirectory() && !flameDir.mkdirs()) {
+                throw new IOException(String.format("Cannot create: %s", flameDir.getAbsolutePath())); //NOI18N
+            }
+            for (Map.Entry<String,CallTree> e : new TreeMap<>(flamePerFile).entrySet()) {
+                final CallTree ct = e.getValue();
+                final File file = flameFile(e.getKey());
+                final File parent = file.getParentFile();
+                if (!parent.isDirectory() && !parent.mkdirs()) {
+                    throw new IOException(String.format("Cannot create: %s", parent.getAbsolutePath())); //NOI18N
+                }
+                ct.write(file, ruleNames);
+                rw.printf("%s: %d stacks %.3fms%n",  //NOI18N
+                        e.getKey(),
+                        ct.getStackCount(),
+                        ct.getTotalTime() / 1e6);
+                total.add(ct);
+            }
+            total.write(new File(flameDir, FLAME_TOTAL), ruleNames);
+            rw.printf("Total: %d stacks %.3fms%n",   //NOI18N
+                    total.getStackCount(),
+                    total.getTotalTime() / 1e6);
+        } catch (IOException ioe) {
+            rw.printf("Cannot write: %s%n", ioe.getMessage());  //NOI18N
+        }
+        rw.flush();
+    }
+
+    /**
+     * Returns the stacks file of a source mirroring its corpus relative path
+     * so that equally named files in different folders do not collide.
+     */
+    private File flameFile(final String path) {
+        File file = flameDir;
+        final String[] segments = path.split("/");  //NOI18N
+        for (int i = 0; i < segments.length; i++) {
+            final String segment = segments[i].replaceAll("[^\\w.-]", "_");   //NOI18N
+            file = new File(file, i + 1 == segments.length ?
+                    segment + FLAME_EXT :
+                    segment);
+        }
+        return file;
+    }
+
+    private void reportRetained(final PrintWriter rw) {
+        rw.printf("%nRetained parse tree and tokens per file:%n"); //NOI18N
+        long bytes = 0L;
+        long sourceBytes = 0L;
+        final Map<String,long[]> perType = new HashMap<>();
+        for (Map.Entry<String,RetainedStat> e : retainedPerFile.entrySet()) {
+            final RetainedStat rs = e.getValue();
+            rw.printf("%s: %d B %d object(s) %.1f B/source byte%n",  //NOI18N
+                    e.getKey(),
+                    rs.size.getBytes(),
+                    rs.size.getObjects(),
+                    rs.sourceBytes == 0 ? 0 : ((double) rs.size.getBytes()) / rs.sourceBytes);
+            bytes += rs.size.getBytes();
+            sourceBytes += rs.sourceBytes;
+            for (Map.Entry<Class<?>,long[]> ce : rs.size.getPerClass().entrySet()) {
+                final long[] stat = perType.computeIfAbsent(typeName(ce.getKey()), (k) -> new long[2]);
+                stat[0] += ce.getValue()[0];
+                stat[1] += ce.getValue()[1];
+            }
+        }
+        rw.printf("Total: %d B %.1f B/source byte%n",   //NOI18N
+                bytes,
+                sourceBytes == 0 ? 0 : ((double) bytes) / sourceBytes);
+        rw.printf("Top types by retained size:%n");    //NOI18N
+        final long total = bytes;
+        perType.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]))
+                .limit(retainedTypesLimit)
+                .forEach((e) -> {
+                    rw.printf("\t%s: %d instance(s) %d B (%.1f%%)%n",  //NOI18N
+                            e.getKey(),
+                            e.getValue()[0],
+                            e.getValue()[1],
+                            total == 0 ? 0 : 100.0 * e.getValue()[1] / total);
+                });
+        rw.flush();
+    }
+
+    private static String typeName(final Class<?> clz) {
+        if (clz.isArray()) {
+            return typeName(clz.getComponentType()) + "[]";   //NOI18N
+        }
+        final String name = clz.getName();
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    private enum Prediction {
+        SLL("sll", PredictionMode.SLL),  //NOI18N
+        LL("ll", PredictionMode.LL),    //NOI18N
+        TWO_STAGE("twostage", PredictionMode.SLL),  //NOI18N
+        EXACT("exact", PredictionMode.LL_EXACT_AMBIG_DETECTION);  //NOI18N
+
+        private final String name;
+        private final PredictionMode mode;
+
+        Prediction(
+                final String name,
+                final PredictionMode mode) {
+            this.name = name;
+            this.mode = mode;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        static Prediction forName(final String name) {
+            for (Prediction p : values()) {
+                if (p.name.equals(name)) {
+                    return p;
+                }
+            }
+            throw new IllegalArgumentException(name);
+        }
+    }
+
+    /**
+     * Prediction stages of a file, the bail token is the last SLL bail out.
+     * Only the token position and text are kept, the token itself would
+     * retain the lexer and the file content.
+     */
+    private static final class PredictionStat {
+        int parses;
+        int fallbacks;
+        long sllTime;
+        long llTime;
+        int ambiguities;
+        int bailIndex = -1;
+        int bailLine;
+        int bailColumn;
+        String bailText;
+
+        void bailAt(final Token token) {
+            bailIndex = token.getTokenIndex();
+            bailLine = token.getLine();
+            bailColumn = token.getCharPositionInLine();
+            bailText = token.getText();
+        }
+
+        PredictionStat add(final PredictionStat other) {
+            parses += other.parses;
+            fallbacks += other.fallbacks;
+            sllTime += other.sllTime;
+            llTime += other.llTime;
+            ambiguities += other.ambiguities;
+            if (other.bailIndex >= 0) {
+                bailIndex = other.bailIndex;
+                bailLine = other.bailLine;
+                bailColumn = other.bailColumn;
+                bailText = other.bailText;
+            }
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append(String.format("parses: %d fallbacks: %d SLL: %.3fms LL: %.3fms",   //NOI18N
+                    parses,
+                    fallbacks,
+                    sllTime / 1e6,
+                    llTime / 1e6));
+            if (ambiguities > 0) {
+                sb.append(String.format(" exact ambiguities: %d", ambiguities));  //NOI18N
+            }
+            if (bailIndex >= 0) {
+                sb.append(String.format(" SLL bailed at token %d (%d:%d '%s')",    //NOI18N
+                        bailIndex,
+                        bailLine,
+                        bailColumn,
+                        bailText));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Parse times of the first pass over the corpus, the pass ends by
+     * the first file parsed for the second time.
+     */
+    private static final class FirstPass {
+        final Set<String> files = new HashSet<>();
+        String firstFile;
+        long firstTime;
+        long passTime;
+        boolean done;
+
+        synchronized void record(
+                final String file,
+                final long time) {
+            if (done) {
+                return;
+            }
+            if (!files.add(file)) {
+                done = true;
+                return;
+            }
+            if (firstFile == null) {
+                firstFile = file;
+                firstTime = time;
+            }
+            passTime += time;
+        }
+
+        synchronized void add(final FirstPass other) {
+            synchronized (other) {
+                if (firstFile == null) {
+                    firstFile = other.firstFile;
+                    firstTime = other.firstTime;
+                }
+                files.addAll(other.files);
+                passTime += other.passTime;
+            }
+        }
+    }
+
+    private static final class RetainedStat {
+        final RetainedSize size;
+        final long sourceBytes;
+
+        RetainedStat(
+                final RetainedSize size,
+                final long sourceBytes) {
+            this.size = size;
+            this.sourceBytes = sourceBytes;
+        }
+    }
 }
@@ -0,0 +1,183 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest.antlr;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Self times of parser rules per rule stack.
+ * A trie of the rule call paths kept in primitive arrays, a node is created
+ * before its children so the parent index is always lower than the child one.
+ * Written in the collapsed stack format of the flame graph tools, one line
+ * per stack with the rule names separated by ';' and the time in nanoseconds.
+ * @author Tomas Zezula
+ */
+final class CallTree {
+    static final int ROOT = 0;
+    private static final int NONE = -1;
+    private static final int INITIAL_SIZE = 1024;
+
+    private int[] parents;
+    private int[] rules;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private long[] times;
+    private int size;
+
+    CallTree() {
+        parents = new int[INITIAL_SIZE];
+        rules = new int[INITIAL_SIZE];
+        firstChildren = new int[INITIAL_SIZE];
+        nextSiblings = new int[INITIAL_SIZE];
+        times = new long[INITIAL_SIZE];
+        parents[ROOT] = rules[ROOT] = firstChildren[ROOT] = nextSiblings[ROOT] = NONE;
+        size = 1;
+    }
+
+    /**
+     * Returns the node for the rule called from the parent node, creates it
+     * when the rule was not called from the parent yet.
+     * @param parent the parent node, {@link #ROOT} for the start rule
+     * @param rule the rule index
+     * @return the node
+     */
+    int child(final int parent, final int rule) {
+        int node = firstChildren[parent];
+        while (node != NONE) {
+            if (rules[node] == rule) {
+                return node;
+            }
+            node = nextSiblings[node];
+        }
+        if (size == parents.length) {
+            final int newLength = size << 1;
+            parents = Arrays.copyOf(parents, newLength);
+            rules = Arrays.copyOf(rules, newLength);
+            firstChildren = Arrays.copyOf(firstChildren, newLength);
+            nextSiblings = Arrays.copyOf(nextSiblings, newLength);
+            times = Arrays.copyOf(times, newLength);
+        }
+        node = size++;
+        parents[node] = parent;
+        rules[node] = rule;
+        firstChildren[node] = NONE;
+        nextSiblings[node] = firstChildren[parent];
+        firstChildren[parent] = node;
+        return node;
+    }
+
+    void add(final int node, final long time) {
+        times[node] += time;
+    }
+
+    /**
+     * Adds the times of other tree into this tree.
+     * @param other the tree to add
+     */
+    void add(final CallTree other) {
+        final int[] map = new int[other.size];
+        map[ROOT] = ROOT;
+        for (int i = 1; i < other.size; i++) {
+            map[i] = child(map[other.parents[i]], other.rules[i]);
+            times[map[i]] += other.times[i];
+        }
+    }
+
+    long getTotalTime() {
+        long total = 0L;
+        for (int i = 1; i < size; i++) {
+            total += times[i];
+        }
+        return total;
+    }
+
+    int getStackCount() {
+        int count = 0;
+        for (int i = 1; i < size; i++) {
+            if (times[i] > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes the stacks with a positive time in the collapsed stack format.
+     * @param file the file to write into
+     * @param ruleNames the rule names
+     * @throws IOException in case of IO error
+     */
+    void write(final File file, final String[] ruleNames) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file),
+                StandardCharsets.UTF_8))) {
+            final StringBuilder sb = new StringBuilder();
+            int[] path = new int[64];
+            for (int i = 1; i < size; i++) {
+                if (times[i] <= 0) {
+                    continue;
+                }
+                int depth = 0;
+                for (int node = i; node != ROOT; node = parents[node]) {
+                    if (depth == path.length) {
+                        path = Arrays.copyOf(path, depth << 1);
+                    }
+                    path[depth++] = rules[node];
+                }
+                sb.setLength(0);
+                for (int j = depth - 1; j >= 0; j--) {
+                    sb.append(ruleNames[path[j]]);
+                    sb.append(j == 0 ? ' ' : ';');
+                }
+                sb.append(times[i]).append('\n');   //NOI18N
+                out.write(sb.toString());
+            }
+        }
+    }
+}
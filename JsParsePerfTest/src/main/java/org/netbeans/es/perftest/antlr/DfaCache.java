@@ -0,0 +1,627 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest.antlr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNConfig;
+import org.antlr.v4.runtime.atn.ATNConfigSet;
+import org.antlr.v4.runtime.atn.ATNSimulator;
+import org.antlr.v4.runtime.atn.ConflictInfo;
+import org.antlr.v4.runtime.atn.PredictionContext;
+import org.antlr.v4.runtime.atn.SemanticContext;
+import org.antlr.v4.runtime.dfa.AcceptStateInfo;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+
+/**
+ * Persists the warmed parser DFA into a compact file and preloads it.
+ * The file is keyed by the checksum of the serialized ATN, a file written for
+ * a different grammar is ignored. The DFA states are written with their ATN
+ * configurations so that the prediction can extend the preloaded DFA.
+ * @author Tomas Zezula
+ */
+final class DfaCache {
+    private static final int MAGIC = 0x44464143;    //DFAC
+    private static final int VERSION = 1;
+    private static final int NONE = -1;
+    private static final int ERROR = -2;
+    private static final int CTX_EMPTY_LOCAL = 0;
+    private static final int CTX_EMPTY_FULL = 1;
+    private static final int CTX_NODE = 2;
+    private static final int SEM_NONE = 0;
+    private static final int SEM_PREDICATE = 1;
+    private static final int SEM_PRECEDENCE = 2;
+    private static final int SEM_AND = 3;
+    private static final int SEM_OR = 4;
+
+    private DfaCache() {
+        throw new IllegalStateException("No instance allowed");    //NOI18N
+    }
+
+    /**
+     * Computes the checksum of the serialized ATN.
+     * @param serializedATN the serialized ATN of the recognizer
+     * @return the checksum
+     */
+    static long checksum(final String serializedATN) {
+        final CRC32 crc = new CRC32();
+        for (int i = 0; i < serializedATN.length(); i++) {
+            final char c = serializedATN.charAt(i);
+            crc.update(c >>> 8);
+            crc.update(c);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Writes the DFA of all decisions.
+     * @param atn the ATN to write the DFA of
+     * @param checksum the ATN checksum
+     * @param file the file to write into
+     * @return the written DFA statistics
+     * @throws IOException in case of I/O error
+     */
+    static Stats save(
+            final ATN atn,
+            final long checksum,
+            final File file) throws IOException {
+        final Writer w = new Writer();
+        final DFA[] dfas = atn.decisionToDFA;
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            for (DFA dfa : dfas) {
+                if (!dfa.isEmpty()) {
+                    w.writeDFA(dfa, out);
+                }
+            }
+            writeVarInt(out, NONE);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(checksum);
+            out.writeInt(dfas.length);
+            out.write(w.semantics.toByteArray());
+            out.writeByte(NONE);
+            out.write(w.contexts.toByteArray());
+            out.writeByte(NONE);
+            body.writeTo(out);
+        }
+        w.stats.bytes = file.length();
+        return w.stats;
+    }
+
+    /**
+     * Replaces the DFA of all decisions by the DFA read from the file.
+     * @param atn the ATN to load the DFA into
+     * @param checksum the ATN checksum
+     * @param file the file to read
+     * @return the read DFA statistics or null when the file does not exist
+     * or was written for a different ATN
+     * @throws IOException in case of I/O error
+     */
+    static Stats load(
+            final ATN atn,
+            final long checksum,
+            final File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC ||
+                    in.readInt() != VERSION ||
+                    in.readLong() != checksum ||
+                    in.readInt() != atn.decisionToDFA.length) {
+                return null;
+            }
+            atn.clearDFA();
+            final Reader r = new Reader(atn);
+            r.readSemantics(in);
+            r.readContexts(in);
+            for (int decision = readVarInt(in); decision != NONE; decision = readVarInt(in)) {
+                r.readDFA(atn.decisionToDFA[decision], in);
+            }
+            r.stats.bytes = file.length();
+            return r.stats;
+        }
+    }
+
+    /**
+     * Counts the states and configurations of the DFA.
+     * @param dfas the DFA of decisions
+     * @return the statistics
+     */
+    static Stats count(final DFA[] dfas) {
+        final Stats stats = new Stats();
+        for (DFA dfa : dfas) {
+            if (!dfa.isEmpty()) {
+                stats.decisions++;
+                for (DFAState state : dfa.states.values()) {
+                    stats.states++;
+                    stats.configs += state.configs.size();
+                }
+            }
+        }
+        return stats;
+    }
+
+    static final class Stats {
+        int decisions;
+        int states;
+        long configs;
+        long bytes;
+
+        @Override
+        public String toString() {
+            return String.format("decisions: %d states: %d configs: %d bytes: %d",  //NOI18N
+                    decisions,
+                    states,
+                    configs,
+                    bytes);
+        }
+    }
+
+    private static final class Writer {
+        private final Map<PredictionContext,Integer> contextIds = new IdentityHashMap<>();
+        private final Map<SemanticContext,Integer> semanticIds = new IdentityHashMap<>();
+        private final ByteArrayOutputStream contexts = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream semantics = new ByteArrayOutputStream();
+        private final DataOutputStream contextsOut = new DataOutputStream(contexts);
+        private final DataOutputStream semanticsOut = new DataOutputStream(semantics);
+        private final Stats stats = new Stats();
+
+        void writeDFA(
+                final DFA dfa,
+                final DataOutputStream out) throws IOException {
+            final List<DFAState> states = new ArrayList<>(dfa.states.values());
+            states.sort(Comparator.comparingInt((s) -> s.stateNumber));
+            final Map<DFAState,Integer> ids = new IdentityHashMap<>();
+            for (DFAState state : states) {
+                ids.put(state, ids.size());
+            }
+            stats.decisions++;
+            stats.states += states.size();
+            writeVarInt(out, dfa.decision);
+            writeVarInt(out, states.size());
+            for (DFAState state : states) {
+                writeState(dfa, state, out);
+            }
+            for (DFAState state : states) {
+                writeEdges(state.getEdgeMap(), ids, out);
+                writeEdges(state.isContextSensitive() ?
+                        state.getContextEdgeMap() :
+                        null,
+                        ids,
+                        out);
+            }
+            if (dfa.isPrecedenceDfa()) {
+                writeEdges(dfa.s0.get().getEdgeMap(), ids, out);
+                writeEdges(dfa.s0full.get().getEdgeMap(), ids, out);
+            } else {
+                writeVarInt(out, id(dfa.s0.get(), ids));
+                writeVarInt(out, id(dfa.s0full.get(), ids));
+            }
+        }
+
+        private void writeState(
+                final DFA dfa,
+                final DFAState state,
+                final DataOutputStream out) throws IOException {
+            final ATNConfigSet configs = state.configs;
+            stats.configs += configs.size();
+            writeVarInt(out, configs.size());
+            for (ATNConfig config : configs) {
+                writeVarInt(out, config.getState().stateNumber);
+                writeVarInt(out, config.getAlt());
+                writeVarInt(out, context(config.getContext()));
+                writeVarInt(out, semantic(config.getSemanticContext()));
+                writeVarInt(out, config.getOuterContextDepth());
+                out.writeBoolean(config.isPrecedenceFilterSuppressed());
+            }
+            out.writeBoolean(configs.isOutermostConfigSet());
+            out.writeBoolean(configs.hasSemanticContext());
+            final ConflictInfo conflict = configs.getConflictInfo();
+            if (conflict == null) {
+                writeVarInt(out, NONE);
+            } else {
+                final long[] alts = conflict.getConflictedAlts().toLongArray();
+                writeVarInt(out, alts.length);
+                for (long l : alts) {
+                    out.writeLong(l);
+                }
+                out.writeBoolean(conflict.isExact());
+            }
+            writeVarInt(out, state.isAcceptState() ?
+                    state.getPrediction() :
+                    NONE);
+            if (state.predicates == null) {
+                writeVarInt(out, NONE);
+            } else {
+                writeVarInt(out, state.predicates.length);
+                for (DFAState.PredPrediction p : state.predicates) {
+                    writeVarInt(out, semantic(p.pred));
+                    writeVarInt(out, p.alt);
+                }
+            }
+            if (state.isContextSensitive()) {
+                final BitSet symbols = new BitSet();
+                for (int symbol = dfa.getMinDfaEdge(); symbol <= dfa.getMaxDfaEdge(); symbol++) {
+                    if (state.isContextSymbol(symbol)) {
+                        symbols.set(symbol - dfa.getMinDfaEdge());
+                    }
+                }
+                writeVarInt(out, symbols.cardinality());
+                for (int i = symbols.nextSetBit(0); i >= 0; i = symbols.nextSetBit(i + 1)) {
+                    writeVarInt(out, i + dfa.getMinDfaEdge());
+                }
+            } else {
+                writeVarInt(out, NONE);
+            }
+        }
+
+        private static void writeEdges(
+                final Map<Integer,DFAState> edges,
+                final Map<DFAState,Integer> ids,
+                final DataOutputStream out) throws IOException {
+            if (edges == null) {
+                writeVarInt(out, NONE);
+                return;
+            }
+            writeVarInt(out, edges.size());
+            for (Map.Entry<Integer,DFAState> e : edges.entrySet()) {
+                writeVarInt(out, e.getKey());
+                writeVarInt(out, id(e.getValue(), ids));
+            }
+        }
+
+        private static int id(
+                final DFAState state,
+                final Map<DFAState,Integer> ids) {
+            if (state == null) {
+                return NONE;
+            } else if (state == ATNSimulator.ERROR) {
+                return ERROR;
+            } else {
+                final Integer id = ids.get(state);
+                if (id == null) {
+                    throw new IllegalStateException("Edge to unknown state: " + state);  //NOI18N
+                }
+                return id;
+            }
+        }
+
+        private int context(final PredictionContext ctx) throws IOException {
+            Integer id = contextIds.get(ctx);
+            if (id == null) {
+                final int kind;
+                final int[] parents;
+                final int[] returnStates;
+                if (ctx == PredictionContext.EMPTY_LOCAL) {
+                    kind = CTX_EMPTY_LOCAL;
+                    parents = returnStates = null;
+                } else if (ctx == PredictionContext.EMPTY_FULL) {
+                    kind = CTX_EMPTY_FULL;
+                    parents = returnStates = null;
+                } else {
+                    kind = CTX_NODE;
+                    parents = new int[ctx.size()];
+                    returnStates = new int[ctx.size()];
+                    for (int i = 0; i < parents.length; i++) {
+                        returnStates[i] = ctx.getReturnState(i);
+                        parents[i] = isEmptyKey(returnStates[i]) ?
+                                NONE :
+                                context(ctx.getParent(i));
+                    }
+                }
+                contextsOut.writeByte(kind);
+                if (parents != null) {
+                    writeVarInt(contextsOut, parents.length);
+                    for (int i = 0; i < parents.length; i++) {
+                        writeVarInt(contextsOut, parents[i]);
+                        writeVarInt(contextsOut, returnStates[i]);
+                    }
+                }
+                id = contextIds.size();
+                contextIds.put(ctx, id);
+            }
+            return id;
+        }
+
+        private int semantic(final SemanticContext sem) throws IOException {
+            Integer id = semanticIds.get(sem);
+            if (id == null) {
+                if (sem == SemanticContext.NONE) {
+                    semanticsOut.writeByte(SEM_NONE);
+                } else if (sem instanceof SemanticContext.Predicate) {
+                    final SemanticContext.Predicate p = (SemanticContext.Predicate) sem;
+                    semanticsOut.writeByte(SEM_PREDICATE);
+                    writeVarInt(semanticsOut, p.ruleIndex);
+                    writeVarInt(semanticsOut, p.predIndex);
+                    semanticsOut.writeBoolean(p.isCtxDependent);
+                } else if (sem instanceof SemanticContext.PrecedencePredicate) {
+                    semanticsOut.writeByte(SEM_PRECEDENCE);
+                    writeVarInt(semanticsOut, ((SemanticContext.PrecedencePredicate) sem).precedence);
+                } else if (sem instanceof SemanticContext.Operator) {
+                    final Collection<SemanticContext> operands = ((SemanticContext.Operator) sem).getOperands();
+                    final int[] ids = new int[operands.size()];
+                    int i = 0;
+                    for (SemanticContext operand : operands) {
+                        ids[i++] = semantic(operand);
+                    }
+                    semanticsOut.writeByte(sem instanceof SemanticContext.AND ?
+                            SEM_AND :
+                            SEM_OR);
+                    writeVarInt(semanticsOut, ids.length);
+                    for (int operand : ids) {
+                        writeVarInt(semanticsOut, operand);
+                    }
+                } else {
+                    throw new IllegalStateException("Unknown semantic context: " + sem);   //NOI18N
+                }
+                id = semanticIds.size();
+                semanticIds.put(sem, id);
+            }
+            return id;
+        }
+    }
+
+    private static final class Reader {
+        private final ATN atn;
+        private final List<PredictionContext> contexts = new ArrayList<>();
+        private final List<SemanticContext> semantics = new ArrayList<>();
+        private final Stats stats = new Stats();
+
+        Reader(final ATN atn) {
+            this.atn = atn;
+        }
+
+        void readSemantics(final DataInputStream in) throws IOException {
+            for (int kind = in.readByte(); kind != NONE; kind = in.readByte()) {
+                final SemanticContext sem;
+                switch (kind) {
+                    case SEM_NONE:
+                        sem = SemanticContext.NONE;
+                        break;
+                    case SEM_PREDICATE:
+                        sem = new SemanticContext.Predicate(readVarInt(in), readVarInt(in), in.readBoolean());
+                        break;
+                    case SEM_PRECEDENCE:
+                        sem = new SemanticContext.PrecedencePredicate(readVarInt(in));
+                        break;
+                    case SEM_AND:
+                    case SEM_OR:
+                        SemanticContext res = null;
+                        for (int i = readVarInt(in); i > 0; i--) {
+                            final SemanticContext operand = semantics.get(readVarInt(in));
+                            res = res == null ?
+                                    operand :
+                                    kind == SEM_AND ?
+                                        SemanticContext.and(res, operand) :
+                                        SemanticContext.or(res, operand);
+                        }
+                        sem = res;
+                        break;
+                    default:
+                        throw new IOException("Corrupted semantic context: " + kind);  //NOI18N
+                }
+                semantics.add(sem);
+            }
+        }
+
+        void readContexts(final DataInputStream in) throws IOException {
+            for (int kind = in.readByte(); kind != NONE; kind = in.readByte()) {
+                final PredictionContext ctx;
+                switch (kind) {
+                    case CTX_EMPTY_LOCAL:
+                        ctx = PredictionContext.EMPTY_LOCAL;
+                        break;
+                    case CTX_EMPTY_FULL:
+                        ctx = PredictionContext.EMPTY_FULL;
+                        break;
+                    case CTX_NODE:
+                        PredictionContext res = null;
+                        for (int i = readVarInt(in); i > 0; i--) {
+                            final int parent = readVarInt(in);
+                            final int returnState = readVarInt(in);
+                            final PredictionContext child = parent == NONE ?
+                                    (returnState == PredictionContext.EMPTY_FULL_STATE_KEY ?
+                                        PredictionContext.EMPTY_FULL :
+                                        PredictionContext.EMPTY_LOCAL) :
+                                    contexts.get(parent).getChild(returnState);
+                            res = res == null ?
+                                    child :
+                                    PredictionContext.join(res, child);
+                        }
+                        ctx = atn.getCachedContext(res);
+                        break;
+                    default:
+                        throw new IOException("Corrupted prediction context: " + kind);  //NOI18N
+                }
+                contexts.add(ctx);
+            }
+        }
+
+        void readDFA(
+                final DFA dfa,
+                final DataInputStream in) throws IOException {
+            final DFAState[] states = new DFAState[readVarInt(in)];
+            stats.decisions++;
+            stats.states += states.length;
+            for (int i = 0; i < states.length; i++) {
+                states[i] = readState(dfa, in);
+            }
+            for (DFAState state : states) {
+                for (int i = readVarInt(in); i > 0; i--) {
+                    state.setTarget(readVarInt(in), state(readVarInt(in), states));
+                }
+                for (int i = readVarInt(in); i > 0; i--) {
+                    state.setContextTarget(readVarInt(in), state(readVarInt(in), states));
+                }
+            }
+            if (dfa.isPrecedenceDfa()) {
+                for (int i = readVarInt(in); i > 0; i--) {
+                    dfa.setPrecedenceStartState(readVarInt(in), false, state(readVarInt(in), states));
+                }
+                for (int i = readVarInt(in); i > 0; i--) {
+                    dfa.setPrecedenceStartState(readVarInt(in), true, state(readVarInt(in), states));
+                }
+            } else {
+                dfa.s0.set(state(readVarInt(in), states));
+                dfa.s0full.set(state(readVarInt(in), states));
+            }
+        }
+
+        private DFAState readState(
+                final DFA dfa,
+                final DataInputStream in) throws IOException {
+            final ATNConfigSet configs = new ATNConfigSet();
+            for (int i = readVarInt(in); i > 0; i--) {
+                final ATNConfig config = ATNConfig.create(
+                        atn.states.get(readVarInt(in)),
+                        readVarInt(in),
+                        contexts.get(readVarInt(in)),
+                        semantics.get(readVarInt(in)));
+                config.setOuterContextDepth(readVarInt(in));
+                config.setPrecedenceFilterSuppressed(in.readBoolean());
+                configs.add(config);
+            }
+            stats.configs += configs.size();
+            configs.setOutermostConfigSet(in.readBoolean());
+            if (in.readBoolean()) {
+                configs.markExplicitSemanticContext();
+            } else {
+                configs.clearExplicitSemanticContext();
+            }
+            final int conflictSize = readVarInt(in);
+            if (conflictSize != NONE) {
+                final long[] alts = new long[conflictSize];
+                for (int i = 0; i < alts.length; i++) {
+                    alts[i] = in.readLong();
+                }
+                configs.setConflictInfo(new ConflictInfo(BitSet.valueOf(alts), in.readBoolean()));
+            }
+            final DFAState state = dfa.addState(new DFAState(dfa, configs.clone(true)));
+            final int prediction = readVarInt(in);
+            if (prediction != NONE) {
+                state.setAcceptState(new AcceptStateInfo(prediction));
+            }
+            final int predicates = readVarInt(in);
+            if (predicates != NONE) {
+                state.predicates = new DFAState.PredPrediction[predicates];
+                for (int i = 0; i < predicates; i++) {
+                    state.predicates[i] = new DFAState.PredPrediction(semantics.get(readVarInt(in)), readVarInt(in));
+                }
+            }
+            final int contextSymbols = readVarInt(in);
+            if (contextSymbols != NONE) {
+                state.setContextSensitive(atn);
+                for (int i = 0; i < contextSymbols; i++) {
+                    state.setContextSymbol(readVarInt(in));
+                }
+            }
+            return state;
+        }
+
+        private static DFAState state(
+                final int id,
+                final DFAState[] states) {
+            switch (id) {
+                case NONE:
+                    return null;
+                case ERROR:
+                    return ATNSimulator.ERROR;
+                default:
+                    return states[id];
+            }
+        }
+    }
+
+    /**
+     * Writes the int as zig-zag varint, most of the values are small.
+     */
+    private static void writeVarInt(
+            final DataOutputStream out,
+            final int value) throws IOException {
+        int v = (value << 1) ^ (value >> 31);
+        while ((v & ~0x7f) != 0) {
+            out.writeByte((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    private static int readVarInt(final DataInputStream in) throws IOException {
+        int v = 0;
+        for (int shift = 0;; shift += 7) {
+            final int b = in.readUnsignedByte();
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static boolean isEmptyKey(final int returnState) {
+        return returnState == PredictionContext.EMPTY_FULL_STATE_KEY ||
+                returnState == PredictionContext.EMPTY_LOCAL_STATE_KEY;
+    }
+}
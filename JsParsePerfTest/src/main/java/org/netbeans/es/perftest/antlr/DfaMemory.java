@@ -0,0 +1,281 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest.antlr;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+
+/**
+ * Controls the growth of the shared parser DFA.
+ * The DFA can be cleared before each file or each run for cold numbers and
+ * capped by evicting whole decisions, the DFA size is recorded per run.
+ * The runs are delimited by the runner, the clearing, the measurement and the
+ * eviction are done between the parses, outside of the measured time.
+ * The bytes are estimated from the states and configurations count, the
+ * constants were calibrated by {@link RetainedSize} on the test files.
+ * @author Tomas Zezula
+ */
+final class DfaMemory {
+    static final int STATE_BYTES = 160;
+    static final int CONFIG_BYTES = 37;
+
+    enum Cold {
+        NONE,
+        FILE,
+        RUN
+    }
+
+    enum Policy {
+        LRU,
+        LARGEST
+    }
+
+    private final ATN atn;
+    private final ATN[] lexerAtns;
+    private final Cold cold;
+    private final long maxBytes;
+    private final Policy policy;
+    private final long[] lastUse;
+    private final List<RunStat> runs = new ArrayList<>();
+    private volatile long clock;
+    private RunStat current = new RunStat();
+
+    /**
+     * Creates a new {@link DfaMemory}.
+     * @param atn the parser ATN
+     * @param lexerAtns the lexer ATNs cleared together with the parser ATN
+     * @param cold the cold mode
+     * @param maxBytes the DFA cap in bytes or -1 for no cap
+     * @param policy the eviction policy
+     */
+    DfaMemory(
+            final ATN atn,
+            final ATN[] lexerAtns,
+            final Cold cold,
+            final long maxBytes,
+            final Policy policy) {
+        this.atn = atn;
+        this.lexerAtns = lexerAtns;
+        this.cold = cold;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.lastUse = new long[atn.getNumberOfDecisions()];
+    }
+
+    /**
+     * Creates a simulator recording the last use of decisions.
+     * @param parser the parser to create the simulator for
+     * @return the simulator
+     */
+    ParserATNSimulator createSimulator(final Parser parser) {
+        return new ParserATNSimulator(parser, atn) {
+            @Override
+            public int adaptivePredict(
+                    final TokenStream input,
+                    final int decision,
+                    final ParserRuleContext outerContext) {
+                lastUse[decision] = clock;
+                return super.adaptivePredict(input, decision, outerContext);
+            }
+        };
+    }
+
+    /**
+     * Called before a pass over the corpus, ends the previous run and clears
+     * the DFA in the run cold mode.
+     */
+    synchronized void startRun() {
+        if (current.files > 0) {
+            runs.add(current);
+            current = new RunStat();
+        }
+        if (cold == Cold.RUN) {
+            clear();
+        }
+    }
+
+    /**
+     * Called before a file is parsed, clears the DFA in the file cold mode.
+     */
+    synchronized void beforeParse() {
+        if (cold == Cold.FILE) {
+            clear();
+        }
+    }
+
+    /**
+     * Called after the file is parsed, records the DFA size and evicts
+     * decisions over the cap.
+     */
+    synchronized void afterParse() {
+        clock++;
+        current.files++;
+        Usage usage = Usage.of(atn.decisionToDFA);
+        //The cap is enforced between files, the peak shows the overshoot
+        current.peak = current.peak == null || usage.bytes > current.peak.bytes ?
+                usage :
+                current.peak;
+        if (maxBytes >= 0) {
+            while (usage.bytes > maxBytes) {
+                final int decision = victim();
+                if (decision < 0) {
+                    break;
+                }
+                final Usage evicted = Usage.of(atn.decisionToDFA[decision]);
+                atn.decisionToDFA[decision] = new DFA(atn.getDecisionState(decision), decision);
+                current.evictions++;
+                current.evictedBytes += evicted.bytes;
+                usage = usage.minus(evicted);
+            }
+        }
+        current.end = usage;
+    }
+
+    void report(final PrintWriter rw) {
+        final List<RunStat> all;
+        synchronized (this) {
+            all = new ArrayList<>(runs);
+            if (current.files > 0) {
+                all.add(current);
+            }
+        }
+        rw.printf("%nDFA growth (cold: %s, cap: %s):%n",    //NOI18N
+                cold.name().toLowerCase(),
+                maxBytes < 0 ?
+                        "none" :    //NOI18N
+                        String.format("%.1fMB %s", maxBytes / 1048576.0, policy.name().toLowerCase()));  //NOI18N
+        for (int i = 0; i < all.size(); i++) {
+            final RunStat rs = all.get(i);
+            rw.printf("Run: %d files: %d end: %s peak: %s evictions: %d evicted: %.1fMB%n", //NOI18N
+                    1 + i,
+                    rs.files,
+                    rs.end,
+                    rs.peak,
+                    rs.evictions,
+                    rs.evictedBytes / 1048576.0);
+        }
+        rw.flush();
+    }
+
+    private void clear() {
+        atn.clearDFA();
+        for (ATN lexerAtn : lexerAtns) {
+            lexerAtn.clearDFA();
+        }
+    }
+
+    private int victim() {
+        final DFA[] dfas = atn.decisionToDFA;
+        int res = -1;
+        long resUse = Long.MAX_VALUE;
+        long resBytes = -1;
+        for (int i = 0; i < dfas.length; i++) {
+            if (dfas[i].isEmpty()) {
+                continue;
+            }
+            final long use = policy == Policy.LRU ?
+                    lastUse[i] :
+                    0;
+            final long bytes = Usage.of(dfas[i]).bytes;
+            if (use < resUse || (use == resUse && bytes > resBytes)) {
+                res = i;
+                resUse = use;
+                resBytes = bytes;
+            }
+        }
+        return res;
+    }
+
+    static final class Usage {
+        final int states;
+        final long configs;
+        final long bytes;
+
+        private Usage(
+                final int states,
+                final long configs) {
+            this.states = states;
+            this.configs = configs;
+            this.bytes = states * (long) STATE_BYTES + configs * CONFIG_BYTES;
+        }
+
+        Usage minus(final Usage other) {
+            return new Usage(states - other.states, configs - other.configs);
+        }
+
+        static Usage of(final DFA... dfas) {
+            int states = 0;
+            long configs = 0;
+            for (DFA dfa : dfas) {
+                for (DFAState state : dfa.states.values()) {
+                    states++;
+                    configs += state.configs.size();
+                }
+            }
+            return new Usage(states, configs);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("states: %d configs: %d ~%.1fMB", //NOI18N
+                    states,
+                    configs,
+                    bytes / 1048576.0);
+        }
+    }
+
+    private static final class RunStat {
+        int files;
+        Usage end;
+        Usage peak;
+        int evictions;
+        long evictedBytes;
+    }
+}
@@ -0,0 +1,752 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest.antlr;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Tuple;
+import org.antlr.v4.runtime.misc.Tuple2;
+import static org.netbeans.modules.javascript2.editor.parser6.ECMAScript6Lexer.*;
+
+/**
+ * Hand written table driven replacement of the {@link org.netbeans.modules.javascript2.editor.parser6.ECMAScript6Lexer}.
+ * Produces the same token types, channels and positions as the generated lexer
+ * including its longest match and first rule wins resolution, the regex literal
+ * disambiguation by the previous token and the keyword actions.
+ * The template rules are commented out in the grammar, a backtick is an
+ * {@code ERROR} token in both lexers.
+ * @author Tomas Zezula
+ */
+final class HandWrittenLexer implements TokenSource {
+
+    private static final byte C_ID_START = 1;
+    private static final byte C_ID_PART = 1 << 1;
+    private static final byte C_WHITESPACE = 1 << 2;
+    private static final byte C_EOL = 1 << 3;
+    private static final byte C_DIGIT = 1 << 4;
+    private static final byte C_HEX = 1 << 5;
+
+    private static final byte[] CLASSES = new byte[Character.MAX_VALUE + 1];
+
+    private static final char[] LETTERS = {
+        0x0041, 0x005A, 0x0061, 0x007A, 0x00AA, 0x00AA, 0x00B5, 0x00B5,
+        0x00BA, 0x00BA, 0x00C0, 0x00D6, 0x00D8, 0x00F6, 0x00F8, 0x021F,
+        0x0222, 0x0233, 0x0250, 0x02AD, 0x02B0, 0x02B8, 0x02BB, 0x02C1,
+        0x02D0, 0x02D1, 0x02E0, 0x02E4, 0x02EE, 0x02EE, 0x037A, 0x037A,
+        0x0386, 0x0386, 0x0388, 0x038A, 0x038C, 0x038C, 0x038E, 0x03A1,
+        0x03A3, 0x03CE, 0x03D0, 0x03D7, 0x03DA, 0x03F3, 0x0400, 0x0481,
+        0x048C, 0x04C4, 0x04C7, 0x04C8, 0x04CB, 0x04CC, 0x04D0, 0x04F5,
+        0x04F8, 0x04F9, 0x0531, 0x0556, 0x0559, 0x0559, 0x0561, 0x0587,
+        0x05D0, 0x05EA, 0x05F0, 0x05F2, 0x0621, 0x063A, 0x0640, 0x064A,
+        0x0671, 0x06D3, 0x06D5, 0x06D5, 0x06E5, 0x06E6, 0x06FA, 0x06FC,
+        0x0710, 0x0710, 0x0712, 0x072C, 0x0780, 0x07A5, 0x0905, 0x0939,
+        0x093D, 0x093D, 0x0950, 0x0950, 0x0958, 0x0961, 0x0985, 0x098C,
+        0x098F, 0x0990, 0x0993, 0x09A8, 0x09AA, 0x09B0, 0x09B2, 0x09B2,
+        0x09B6, 0x09B9, 0x09DC, 0x09DD, 0x09DF, 0x09E1, 0x09F0, 0x09F1,
+        0x0A05, 0x0A0A, 0x0A0F, 0x0A10, 0x0A13, 0x0A28, 0x0A2A, 0x0A30,
+        0x0A32, 0x0A33, 0x0A35, 0x0A36, 0x0A38, 0x0A39, 0x0A59, 0x0A5C,
+        0x0A5E, 0x0A5E, 0x0A72, 0x0A74, 0x0A85, 0x0A8B, 0x0A8D, 0x0A8D,
+        0x0A8F, 0x0A91, 0x0A93, 0x0AA8, 0x0AAA, 0x0AB0, 0x0AB2, 0x0AB3,
+        0x0AB5, 0x0AB9, 0x0ABD, 0x0ABD, 0x0AD0, 0x0AD0, 0x0AE0, 0x0AE0,
+        0x0B05, 0x0B0C, 0x0B0F, 0x0B10, 0x0B13, 0x0B28, 0x0B2A, 0x0B30,
+        0x0B32, 0x0B33, 0x0B36, 0x0B39, 0x0B3D, 0x0B3D, 0x0B5C, 0x0B5D,
+        0x0B5F, 0x0B61, 0x0B85, 0x0B8A, 0x0B8E, 0x0B90, 0x0B92, 0x0B95,
+        0x0B99, 0x0B9A, 0x0B9C, 0x0B9C, 0x0B9E, 0x0B9F, 0x0BA3, 0x0BA4,
+        0x0BA8, 0x0BAA, 0x0BAE, 0x0BB5, 0x0BB7, 0x0BB9, 0x0C05, 0x0C0C,
+        0x0C0E, 0x0C10, 0x0C12, 0x0C28, 0x0C2A, 0x0C33, 0x0C35, 0x0C39,
+        0x0C60, 0x0C61, 0x0C85, 0x0C8C, 0x0C8E, 0x0C90, 0x0C92, 0x0CA8,
+        0x0CAA, 0x0CB3, 0x0CB5, 0x0CB9, 0x0CDE, 0x0CDE, 0x0CE0, 0x0CE1,
+        0x0D05, 0x0D0C, 0x0D0E, 0x0D10, 0x0D12, 0x0D28, 0x0D2A, 0x0D39,
+        0x0D60, 0x0D61, 0x0D85, 0x0D96, 0x0D9A, 0x0DB1, 0x0DB3, 0x0DBB,
+        0x0DBD, 0x0DBD, 0x0DC0, 0x0DC6, 0x0E01, 0x0E30, 0x0E32, 0x0E33,
+        0x0E40, 0x0E46, 0x0E81, 0x0E82, 0x0E84, 0x0E84, 0x0E87, 0x0E88,
+        0x0E8A, 0x0E8A, 0x0E8D, 0x0E8D, 0x0E94, 0x0E97, 0x0E99, 0x0E9F,
+        0x0EA1, 0x0EA3, 0x0EA5, 0x0EA5, 0x0EA7, 0x0EA7, 0x0EAA, 0x0EAB,
+        0x0EAD, 0x0EB0, 0x0EB2, 0x0EB3, 0x0EBD, 0x0EC4, 0x0EC6, 0x0EC6,
+        0x0EDC, 0x0EDD, 0x0F00, 0x0F00, 0x0F40, 0x0F6A, 0x0F88, 0x0F8B,
+        0x1000, 0x1021, 0x1023, 0x1027, 0x1029, 0x102A, 0x1050, 0x1055,
+        0x10A0, 0x10C5, 0x10D0, 0x10F6, 0x1100, 0x1159, 0x115F, 0x11A2,
+        0x11A8, 0x11F9, 0x1200, 0x1206, 0x1208, 0x1246, 0x1248, 0x1248,
+        0x124A, 0x124D, 0x1250, 0x1256, 0x1258, 0x1258, 0x125A, 0x125D,
+        0x1260, 0x1286, 0x1288, 0x1288, 0x128A, 0x128D, 0x1290, 0x12AE,
+        0x12B0, 0x12B0, 0x12B2, 0x12B5, 0x12B8, 0x12BE, 0x12C0, 0x12C0,
+        0x12C2, 0x12C5, 0x12C8, 0x12CE, 0x12D0, 0x12D6, 0x12D8, 0x12EE,
+        0x12F0, 0x130E, 0x1310, 0x1310, 0x1312, 0x1315, 0x1318, 0x131E,
+        0x1320, 0x1346, 0x1348, 0x135A, 0x13A0, 0x13B0, 0x13B1, 0x13F4,
+        0x1401, 0x1676, 0x1681, 0x169A, 0x16A0, 0x16EA, 0x1780, 0x17B3,
+        0x1820, 0x1877, 0x1880, 0x18A8, 0x1E00, 0x1E9B, 0x1EA0, 0x1EE0,
+        0x1EE1, 0x1EF9, 0x1F00, 0x1F15, 0x1F18, 0x1F1D, 0x1F20, 0x1F39,
+        0x1F3A, 0x1F45, 0x1F48, 0x1F4D, 0x1F50, 0x1F57, 0x1F59, 0x1F59,
+        0x1F5B, 0x1F5B, 0x1F5D, 0x1F5D, 0x1F5F, 0x1F7D, 0x1F80, 0x1FB4,
+        0x1FB6, 0x1FBC, 0x1FBE, 0x1FBE, 0x1FC2, 0x1FC4, 0x1FC6, 0x1FCC,
+        0x1FD0, 0x1FD3, 0x1FD6, 0x1FDB, 0x1FE0, 0x1FEC, 0x1FF2, 0x1FF4,
+        0x1FF6, 0x1FFC, 0x207F, 0x207F, 0x2102, 0x2102, 0x2107, 0x2107,
+        0x210A, 0x2113, 0x2115, 0x2115, 0x2119, 0x211D, 0x2124, 0x2124,
+        0x2126, 0x2126, 0x2128, 0x2128, 0x212A, 0x212D, 0x212F, 0x2131,
+        0x2133, 0x2139, 0x2160, 0x2183, 0x3005, 0x3007, 0x3021, 0x3029,
+        0x3031, 0x3035, 0x3038, 0x303A, 0x3041, 0x3094, 0x309D, 0x309E,
+        0x30A1, 0x30FA, 0x30FC, 0x30FE, 0x3105, 0x312C, 0x3131, 0x318E,
+        0x31A0, 0x31B7, 0x3400, 0x3400, 0x4DB5, 0x4DB5, 0x4E00, 0x4E00,
+        0x9FA5, 0x9FA5, 0xA000, 0xA48C, 0xAC00, 0xAC00, 0xD7A3, 0xD7A3,
+        0xF900, 0xFA2D, 0xFB00, 0xFB06, 0xFB13, 0xFB17, 0xFB1D, 0xFB1D,
+        0xFB1F, 0xFB28, 0xFB2A, 0xFB36, 0xFB38, 0xFB3C, 0xFB3E, 0xFB3E,
+        0xFB40, 0xFB41, 0xFB43, 0xFB44, 0xFB46, 0xFBB1, 0xFBD3, 0xFD3D,
+        0xFD50, 0xFD8F, 0xFD92, 0xFDC7, 0xFDF0, 0xFDFB, 0xFE70, 0xFE72,
+        0xFE74, 0xFE74, 0xFE76, 0xFEFC, 0xFF21, 0xFF3A, 0xFF41, 0xFF5A,
+        0xFF66, 0xFFBE, 0xFFC2, 0xFFC7, 0xFFCA, 0xFFCF, 0xFFD2, 0xFFD7,
+        0xFFDA, 0xFFDC
+    };
+
+    private static final char[] COMBINING_MARKS = {
+        0x0300, 0x034E, 0x0360, 0x0362, 0x0483, 0x0486, 0x0591, 0x05A1,
+        0x05A3, 0x05B9, 0x05BB, 0x05BD, 0x05BF, 0x05BF, 0x05C1, 0x05C2,
+        0x05C4, 0x05C4, 0x064B, 0x0655, 0x0670, 0x0670, 0x06D6, 0x06DC,
+        0x06DF, 0x06E4, 0x06E7, 0x06E8, 0x06EA, 0x06ED, 0x0711, 0x0711,
+        0x0730, 0x074A, 0x07A6, 0x07B0, 0x0901, 0x0903, 0x093C, 0x093C,
+        0x093E, 0x094D, 0x0951, 0x0954, 0x0962, 0x0963, 0x0981, 0x0983,
+        0x09BC, 0x09C4, 0x09C7, 0x09C8, 0x09CB, 0x09CD, 0x09D7, 0x09D7,
+        0x09E2, 0x09E3, 0x0A02, 0x0A02, 0x0A3C, 0x0A3C, 0x0A3E, 0x0A42,
+        0x0A47, 0x0A48, 0x0A4B, 0x0A4D, 0x0A70, 0x0A71, 0x0A81, 0x0A83,
+        0x0ABC, 0x0ABC, 0x0ABE, 0x0AC5, 0x0AC7, 0x0AC9, 0x0ACB, 0x0ACD,
+        0x0B01, 0x0B03, 0x0B3C, 0x0B3C, 0x0B3E, 0x0B43, 0x0B47, 0x0B48,
+        0x0B4B, 0x0B4D, 0x0B56, 0x0B57, 0x0B82, 0x0B83, 0x0BBE, 0x0BC2,
+        0x0BC6, 0x0BC8, 0x0BCA, 0x0BCD, 0x0BD7, 0x0BD7, 0x0C01, 0x0C03,
+        0x0C3E, 0x0C44, 0x0C46, 0x0C48, 0x0C4A, 0x0C4D, 0x0C55, 0x0C56,
+        0x0C82, 0x0C83, 0x0CBE, 0x0CC4, 0x0CC6, 0x0CC8, 0x0CCA, 0x0CCD,
+        0x0CD5, 0x0CD6, 0x0D02, 0x0D03, 0x0D3E, 0x0D43, 0x0D46, 0x0D48,
+        0x0D4A, 0x0D4D, 0x0D57, 0x0D57, 0x0D82, 0x0D83, 0x0DCA, 0x0DCA,
+        0x0DCF, 0x0DD4, 0x0DD6, 0x0DD6, 0x0DD8, 0x0DDF, 0x0DF2, 0x0DF3,
+        0x0E31, 0x0E31, 0x0E34, 0x0E3A, 0x0E47, 0x0E4E, 0x0EB1, 0x0EB1,
+        0x0EB4, 0x0EB9, 0x0EBB, 0x0EBC, 0x0EC8, 0x0ECD, 0x0F18, 0x0F19,
+        0x0F35, 0x0F35, 0x0F37, 0x0F37, 0x0F39, 0x0F39, 0x0F3E, 0x0F3F,
+        0x0F71, 0x0F84, 0x0F86, 0x0F87, 0x0F90, 0x0F97, 0x0F99, 0x0FBC,
+        0x0FC6, 0x0FC6, 0x102C, 0x1032, 0x1036, 0x1039, 0x1056, 0x1059,
+        0x17B4, 0x17D3, 0x18A9, 0x18A9, 0x20D0, 0x20DC, 0x20E1, 0x20E1,
+        0x302A, 0x302F, 0x3099, 0x309A, 0xFB1E, 0xFB1E, 0xFE20, 0xFE23
+    };
+
+    private static final char[] DIGITS = {
+        0x0030, 0x0039, 0x0660, 0x0669, 0x06F0, 0x06F9, 0x0966, 0x096F,
+        0x09E6, 0x09EF, 0x0A66, 0x0A6F, 0x0AE6, 0x0AEF, 0x0B66, 0x0B6F,
+        0x0BE7, 0x0BEF, 0x0C66, 0x0C6F, 0x0CE6, 0x0CEF, 0x0D66, 0x0D6F,
+        0x0E50, 0x0E59, 0x0ED0, 0x0ED9, 0x0F20, 0x0F29, 0x1040, 0x1049,
+        0x1369, 0x1371, 0x17E0, 0x17E9, 0x1810, 0x1819, 0xFF10, 0xFF19
+    };
+
+    private static final char[] CONNECTOR_PUNCTUATIONS = {
+        0x005F, 0x005F, 0x203F, 0x2040, 0x30FB, 0x30FB, 0xFE33, 0xFE34,
+        0xFE4D, 0xFE4F, 0xFF3F, 0xFF3F, 0xFF65, 0xFF65
+    };
+
+    static {
+        mark(LETTERS, C_ID_START | C_ID_PART);
+        mark(COMBINING_MARKS, C_ID_PART);
+        mark(DIGITS, C_ID_PART);
+        mark(CONNECTOR_PUNCTUATIONS, C_ID_PART);
+        mark(new char[] {'$', '$', '_', '_'}, C_ID_START | C_ID_PART);
+        mark(new char[] {0x200C, 0x200D}, C_ID_PART);
+        mark(new char[] {0x0009, 0x0009, 0x000B, 0x000C, 0x0020, 0x0020, 0x00A0, 0x00A0, 0xFEFF, 0xFEFF}, C_WHITESPACE);
+        mark(new char[] {0x000A, 0x000A, 0x000D, 0x000D, 0x2028, 0x2029}, C_EOL);
+        mark(new char[] {'0', '9'}, C_DIGIT | C_HEX);
+        mark(new char[] {'a', 'f', 'A', 'F'}, C_HEX);
+    }
+
+    private final CharStream input;
+    private final char[] data;
+    private final int n;
+    private final Tuple2<? extends TokenSource, CharStream> source;
+    private TokenFactory factory = CommonTokenFactory.DEFAULT;
+    private int p;
+    private int line = 1;
+    private int column;
+    private int lastTokenId = -1;
+    private int punctuatorType;
+
+    HandWrittenLexer(final CharStream input) {
+        this.input = input;
+        this.data = input.size() == 0 ?
+                new char[0] :
+                input.getText(Interval.of(0, input.size() - 1)).toCharArray();
+        this.n = data.length;
+        this.source = Tuple.create(this, input);
+    }
+
+    @Override
+    public Token nextToken() {
+        while (p < n) {
+            final int start = p;
+            final int startLine = line;
+            final int startColumn = column;
+            final char c = data[p];
+            final byte cls = CLASSES[c];
+            int type;
+            int end;
+            int channel = Token.DEFAULT_CHANNEL;
+            if ((cls & C_WHITESPACE) != 0) {
+                end = p + 1;
+                while (end < n && (CLASSES[data[end]] & C_WHITESPACE) != 0) {
+                    end++;
+                }
+                skip(end);
+                continue;
+            } else if ((cls & C_EOL) != 0) {
+                type = EOL;
+                end = p + 1;
+                channel = Lexer.HIDDEN;
+            } else if ((cls & C_ID_START) != 0 || c == '\\') {
+                end = identifierEnd(p);
+                if (end < 0) {
+                    type = ERROR;
+                    end = p + 1;
+                } else {
+                    type = KeywordTable.classify(data, p, end, lastTokenId);
+                }
+            } else if ((cls & C_DIGIT) != 0) {
+                type = NUMERIC_DECIMAL;
+                end = p + 1;
+                if (c == '0' && end < n) {
+                    switch (data[end]) {
+                        case 'b':
+                        case 'B':
+                            end = repeat(end + 1, '0', '1');
+                            type = end > p + 2 ? NUMERIC_BINARY : NUMERIC_DECIMAL;
+                            break;
+                        case 'o':
+                        case 'O':
+                            end = octalEnd(end + 1);
+                            type = end > p + 2 ? NUMERIC_OCTAL : NUMERIC_DECIMAL;
+                            break;
+                        case 'x':
+                        case 'X':
+                            end = hexEnd(end + 1);
+                            type = end > p + 2 ? NUMERIC_HEX : NUMERIC_DECIMAL;
+                            break;
+                    }
+                    if (type == NUMERIC_DECIMAL) {
+                        end = p + 1;
+                    }
+                } else if (c != '0') {
+                    end = repeat(end, '0', '9');
+                }
+                if (type == NUMERIC_DECIMAL) {
+                    if (end < n && data[end] == '.') {
+                        end = repeat(end + 1, '0', '9');
+                    }
+                    end = exponentEnd(end);
+                }
+            } else {
+                switch (c) {
+                    case '/':
+                        end = p + 1;
+                        if (end < n && data[end] == '/') {
+                            skip(lineEnd(end + 1));
+                            continue;
+                        } else if (end < n && data[end] == '*') {
+                            final int commentEnd = commentEnd(p);
+                            if (commentEnd > 0) {
+                                skip(commentEnd);
+                                continue;
+                            } else if (data[n - 1] != '*' || n == p + 2) {
+                                //Unterminated comment
+                                type = ERROR;
+                                end = n;
+                                break;
+                            }
+                        }
+                        final int regexEnd = isRegexPossible() ? regexEnd(p) : -1;
+                        if (regexEnd > 0) {
+                            type = REGULAR_EXPRESSION;
+                            end = regexEnd;
+                        } else if (end < n && data[end] == '=') {
+                            type = PUNCTUATOR_DIVISION_ASSIGNMENT;
+                            end++;
+                        } else {
+                            type = PUNCTUATOR_DIVISION;
+                        }
+                        break;
+                    case '#':
+                        if (lastTokenId == -1 && p + 1 < n && data[p + 1] == '!') {
+                            type = COMMENT_LINE;
+                            end = lineEnd(p + 2);
+                        } else {
+                            type = ERROR;
+                            end = p + 1;
+                        }
+                        break;
+                    case '"':
+                    case '\'':
+                        end = stringEnd(p);
+                        if (end < 0) {
+                            type = ERROR;
+                            end = p + 1;
+                        } else {
+                            type = STRING;
+                        }
+                        break;
+                    case '.':
+                        if (p + 1 < n && (CLASSES[data[p + 1]] & C_DIGIT) != 0) {
+                            type = NUMERIC_DECIMAL;
+                            end = exponentEnd(repeat(p + 1, '0', '9'));
+                        } else if (p + 2 < n && data[p + 1] == '.' && data[p + 2] == '.') {
+                            type = PUNCTUATOR_ELLIPSIS;
+                            end = p + 3;
+                        } else {
+                            type = PUNCTUATOR_DOT;
+                            end = p + 1;
+                        }
+                        break;
+                    default:
+                        end = punctuatorEnd(p);
+                        type = punctuatorType;
+                        break;
+                }
+            }
+            skip(end);
+            final Token token = factory.create(source, type, null, channel, start, end - 1, startLine, startColumn);
+            if (channel == Token.DEFAULT_CHANNEL && type != EOL && type != WHITESPACE) {
+                lastTokenId = type;
+            }
+            return token;
+        }
+        return factory.create(source, Token.EOF, null, Token.DEFAULT_CHANNEL, n, n - 1, line, column);
+    }
+
+    @Override
+    public int getLine() {
+        return line;
+    }
+
+    @Override
+    public int getCharPositionInLine() {
+        return column;
+    }
+
+    @Override
+    public CharStream getInputStream() {
+        return input;
+    }
+
+    @Override
+    public String getSourceName() {
+        return input.getSourceName();
+    }
+
+    @Override
+    public void setTokenFactory(final TokenFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public TokenFactory getTokenFactory() {
+        return factory;
+    }
+
+    /**
+     * Consumes the input up to end, only the '\n' starts a new line as in
+     * the ANTLR lexer.
+     */
+    private void skip(final int end) {
+        for (; p < end; p++) {
+            if (data[p] == '\n') {
+                line++;
+                column = 0;
+            } else {
+                column++;
+            }
+        }
+    }
+
+    private boolean isRegexPossible() {
+        switch (lastTokenId) {
+            case IDENTIFIER:
+            case LITERAL_NULL:
+            case LITERAL_TRUE:
+            case LITERAL_FALSE:
+            case KEYWORD_THIS:
+            case BRACKET_RIGHT_BRACKET:
+            case BRACKET_RIGHT_PAREN:
+            case NUMERIC_DECIMAL:
+            case NUMERIC_INTEGER:
+            case NUMERIC_BINARY:
+            case NUMERIC_OCTAL:
+            case NUMERIC_HEX:
+            case STRING:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Returns the end of an identifier or -1 when there is no identifier start.
+     */
+    private int identifierEnd(int i) {
+        if (data[i] == '\\') {
+            i = unicodeEscapeEnd(i + 1);
+            if (i < 0) {
+                return -1;
+            }
+        } else {
+            i++;
+        }
+        return identifierPartsEnd(i);
+    }
+
+    private int identifierPartsEnd(int i) {
+        while (i < n) {
+            final char c = data[i];
+            if ((CLASSES[c] & C_ID_PART) != 0) {
+                i++;
+            } else if (c == '\\') {
+                final int e = unicodeEscapeEnd(i + 1);
+                if (e < 0) {
+                    break;
+                }
+                i = e;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Returns the end of 'u' Hex4Digits | 'u{' HexDigits '}' or -1.
+     */
+    private int unicodeEscapeEnd(int i) {
+        if (i >= n || data[i] != 'u') {
+            return -1;
+        }
+        i++;
+        if (i < n && data[i] == '{') {
+            final int e = hexEnd(i + 1);
+            return e > i + 1 && e < n && data[e] == '}' ?
+                    e + 1 :
+                    -1;
+        }
+        for (int j = 0; j < 4; j++, i++) {
+            if (i >= n || (CLASSES[data[i]] & C_HEX) == 0) {
+                return -1;
+            }
+        }
+        return i;
+    }
+
+    private int repeat(int i, final char from, final char to) {
+        while (i < n && data[i] >= from && data[i] <= to) {
+            i++;
+        }
+        return i;
+    }
+
+    private int hexEnd(int i) {
+        while (i < n && (CLASSES[data[i]] & C_HEX) != 0) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * The OctalDigit fragment is defined as 'ahoj' in the grammar.
+     */
+    private int octalEnd(int i) {
+        while (i + 3 < n && data[i] == 'a' && data[i + 1] == 'h' && data[i + 2] == 'o' && data[i + 3] == 'j') {
+            i += 4;
+        }
+        return i;
+    }
+
+    private int exponentEnd(final int i) {
+        if (i < n && (data[i] == 'e' || data[i] == 'E')) {
+            int j = i + 1;
+            if (j < n && (data[j] == '+' || data[j] == '-')) {
+                j++;
+            }
+            if (j < n && (CLASSES[data[j]] & C_DIGIT) != 0) {
+                return repeat(j, '0', '9');
+            }
+        }
+        return i;
+    }
+
+    private int lineEnd(int i) {
+        while (i < n && (CLASSES[data[i]] & C_EOL) == 0) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the end of a block or doc comment or -1 when not terminated.
+     * The doc comment is searched for the terminator after the '/**' so
+     * for "/**&#47; x *&#47;" it is longer than the block comment and wins,
+     * when it is not terminated the block comment "/**&#47;" still may be.
+     */
+    private int commentEnd(final int start) {
+        if (start + 2 < n && data[start + 2] == '*') {
+            final int docEnd = terminatorEnd(start + 3);
+            if (docEnd > 0) {
+                return docEnd;
+            }
+        }
+        return terminatorEnd(start + 2);
+    }
+
+    private int terminatorEnd(final int from) {
+        for (int i = from; i + 1 < n; i++) {
+            if (data[i] == '*' && data[i + 1] == '/') {
+                return i + 2;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the end of a string literal or -1 when it does not match.
+     */
+    private int stringEnd(final int start) {
+        final char quote = data[start];
+        int i = start + 1;
+        while (i < n) {
+            final char c = data[i];
+            if (c == quote) {
+                return i + 1;
+            } else if ((CLASSES[c] & C_EOL) != 0) {
+                return -1;
+            } else if (c == '\\') {
+                i = escapeEnd(i + 1);
+                if (i < 0) {
+                    return -1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the end of EscapeSequence or LineContinuation after a backslash or -1.
+     */
+    private int escapeEnd(final int i) {
+        if (i >= n) {
+            return -1;
+        }
+        final char c = data[i];
+        switch (c) {
+            case '\r':
+                return i + 1 < n && data[i + 1] == '\n' ? i + 2 : i + 1;
+            case 'x':
+                return i + 2 < n && (CLASSES[data[i + 1]] & CLASSES[data[i + 2]] & C_HEX) != 0 ?
+                        i + 3 :
+                        -1;
+            case 'u':
+                return unicodeEscapeEnd(i);
+            default:
+                return c >= '1' && c <= '9' ? -1 : i + 1;
+        }
+    }
+
+    /**
+     * Returns the end of a regular expression literal including flags or -1.
+     */
+    private int regexEnd(final int start) {
+        int i = start + 1;
+        if (i >= n || data[i] == '*') {
+            return -1;
+        }
+        while (i < n) {
+            final char c = data[i];
+            if ((CLASSES[c] & C_EOL) != 0) {
+                return -1;
+            } else if (c == '/') {
+                return i == start + 1 ? -1 : identifierPartsEnd(i + 1);
+            } else if (c == '\\') {
+                if (i + 1 >= n || (CLASSES[data[i + 1]] & C_EOL) != 0) {
+                    return -1;
+                }
+                i += 2;
+            } else if (c == '[') {
+                i++;
+                while (true) {
+                    if (i >= n || (CLASSES[data[i]] & C_EOL) != 0) {
+                        return -1;
+                    } else if (data[i] == ']') {
+                        i++;
+                        break;
+                    } else if (data[i] == '\\') {
+                        if (i + 1 >= n || (CLASSES[data[i + 1]] & C_EOL) != 0) {
+                            return -1;
+                        }
+                        i += 2;
+                    } else {
+                        i++;
+                    }
+                }
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the end of the longest punctuator and sets the punctuatorType,
+     * a char which starts no token is an ERROR.
+     */
+    private int punctuatorEnd(final int i) {
+        final char c1 = i + 1 < n ? data[i + 1] : 0;
+        final char c2 = i + 2 < n ? data[i + 2] : 0;
+        final char c3 = i + 3 < n ? data[i + 3] : 0;
+        switch (data[i]) {
+            case '(':
+                return single(i, BRACKET_LEFT_PAREN);
+            case ')':
+                return single(i, BRACKET_RIGHT_PAREN);
+            case '{':
+                return single(i, BRACKET_LEFT_CURLY);
+            case '}':
+                return single(i, BRACKET_RIGHT_CURLY);
+            case '[':
+                return single(i, BRACKET_LEFT_BRACKET);
+            case ']':
+                return single(i, BRACKET_RIGHT_BRACKET);
+            case ';':
+                return single(i, PUNCTUATOR_SEMICOLON);
+            case ',':
+                return single(i, PUNCTUATOR_COMMA);
+            case '~':
+                return single(i, PUNCTUATOR_BITWISE_NOT);
+            case '?':
+                return single(i, PUNCTUATOR_TERNARY);
+            case ':':
+                return single(i, PUNCTUATOR_COLON);
+            case '<':
+                if (c1 == '<') {
+                    return c2 == '=' ?
+                            single(i + 2, PUNCTUATOR_LEFT_SHIFT_ARITHMETIC_ASSIGNMENT) :
+                            single(i + 1, PUNCTUATOR_LEFT_SHIFT_ARITHMETIC);
+                }
+                return c1 == '=' ?
+                        single(i + 1, PUNCTUATOR_LOWER_EQUALS) :
+                        single(i, PUNCTUATOR_LOWER);
+            case '>':
+                if (c1 == '>') {
+                    if (c2 == '>') {
+                        return c3 == '=' ?
+                                single(i + 3, PUNCTUATOR_RIGHT_SHIFT_ASSIGNMENT) :
+                                single(i + 2, PUNCTUATOR_RIGHT_SHIFT);
+                    }
+                    return c2 == '=' ?
+                            single(i + 2, PUNCTUATOR_RIGHT_SHIFT_ARITHMETIC_ASSIGNMENT) :
+                            single(i + 1, PUNCTUATOR_RIGHT_SHIFT_ARITHMETIC);
+                }
+                return c1 == '=' ?
+                        single(i + 1, PUNCTUATOR_GREATER_EQUALS) :
+                        single(i, PUNCTUATOR_GREATER);
+            case '=':
+                if (c1 == '=') {
+                    return c2 == '=' ?
+                            single(i + 2, PUNCTUATOR_EQUALS_EXACTLY) :
+                            single(i + 1, PUNCTUATOR_EQUALS);
+                }
+                return c1 == '>' ?
+                        single(i + 1, PUNCTUATOR_ARROW) :
+                        single(i, PUNCTUATOR_ASSIGNMENT);
+            case '!':
+                if (c1 == '=') {
+                    return c2 == '=' ?
+                            single(i + 2, PUNCTUATOR_NOT_EQUALS_EXACTLY) :
+                            single(i + 1, PUNCTUATOR_NOT_EQUALS);
+                }
+                return single(i, PUNCTUATOR_NOT);
+            case '+':
+                return c1 == '+' ? single(i + 1, PUNCTUATOR_INCREMENT) :
+                        c1 == '=' ? single(i + 1, PUNCTUATOR_PLUS_ASSIGNMENT) :
+                        single(i, PUNCTUATOR_PLUS);
+            case '-':
+                return c1 == '-' ? single(i + 1, PUNCTUATOR_DECREMENT) :
+                        c1 == '=' ? single(i + 1, PUNCTUATOR_MINUS_ASSIGNMENT) :
+                        single(i, PUNCTUATOR_MINUS);
+            case '*':
+                return c1 == '=' ?
+                        single(i + 1, PUNCTUATOR_MULTIPLICATION_ASSIGNMENT) :
+                        single(i, PUNCTUATOR_MULTIPLICATION);
+            case '%':
+                return c1 == '=' ?
+                        single(i + 1, PUNCTUATOR_MODULUS_ASSIGNMENT) :
+                        single(i, PUNCTUATOR_MODULUS);
+            case '&':
+                return c1 == '&' ? single(i + 1, PUNCTUATOR_AND) :
+                        c1 == '=' ? single(i + 1, PUNCTUATOR_BITWISE_AND_ASSIGNMENT) :
+                        single(i, PUNCTUATOR_BITWISE_AND);
+            case '|':
+                return c1 == '|' ? single(i + 1, PUNCTUATOR_OR) :
+                        c1 == '=' ? single(i + 1, PUNCTUATOR_BITWISE_OR_ASSIGNMENT) :
+                        single(i, PUNCTUATOR_BITWISE_OR);
+            case '^':
+                return c1 == '=' ?
+                        single(i + 1, PUNCTUATOR_BITWISE_XOR_ASSIGNMENT) :
+                        single(i, PUNCTUATOR_BITWISE_XOR);
+            default:
+                return single(i, ERROR);
+        }
+    }
+
+    private int single(final int last, final int type) {
+        punctuatorType = type;
+        return last + 1;
+    }
+
+    private static void mark(final char[] ranges, final int flags) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            for (int c = ranges[i]; c <= ranges[i + 1]; c++) {
+                CLASSES[c] |= flags;
+            }
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest.antlr;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.Token;
+import org.netbeans.modules.javascript2.editor.parser6.ECMAScript6Lexer;
+
+/**
+ * Relexes just the lines changed by an edit.
+ * The lexer state is checkpointed at each line start, after an edit the
+ * lexer is restarted from the last checkpoint before the change and stops as
+ * soon as it reaches a line start after the change with the same state as the
+ * old checkpoint at that line, the remaining old tokens are shifted.
+ * The tokens copy their text so that they can be shifted in place.
+ * @author Tomas Zezula
+ */
+final class IncrementalLexer {
+    private static final CommonTokenFactory FACTORY = new CommonTokenFactory(true);
+
+    private final boolean verify;
+    private final Map<String,State> states = new ConcurrentHashMap<>();
+    private final AtomicLong fullLexes = new AtomicLong();
+    private final AtomicLong relexes = new AtomicLong();
+    private final AtomicLong relexedTokens = new AtomicLong();
+    private final AtomicLong reusedTokens = new AtomicLong();
+    private final AtomicLong unconverged = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+
+    IncrementalLexer(final boolean verify) {
+        this.verify = verify;
+    }
+
+    /**
+     * Lexes the content, incrementally when the file was lexed before.
+     * @param name the file path
+     * @param content the content
+     * @param defer the consumer of the work to run after the measured lex
+     * @return the tokens
+     */
+    List<Token> lex(
+            final String name,
+            final char[] content,
+            final Consumer<Runnable> defer) {
+        final State prev = states.remove(name);
+        State state = prev == null ?
+                null :
+                relex(prev, name, content);
+        if (state != null && verify) {
+            final State relexed = state;
+            defer.accept(() -> verify(name, content, relexed));
+        }
+        if (state == null) {
+            fullLexes.incrementAndGet();
+            state = fullLex(name, content);
+        }
+        states.put(name, state);
+        return state.tokens;
+    }
+
+    /**
+     * Compares the relexed tokens with the full lex, replaces the kept state
+     * by the full lex result on a mismatch.
+     */
+    private void verify(
+            final String name,
+            final char[] content,
+            final State state) {
+        final State full = fullLex(name, content);
+        if (!same(state.tokens, full.tokens)) {
+            mismatches.incrementAndGet();
+            states.replace(name, state, full);
+        }
+    }
+
+    void report(final PrintWriter rw) {
+        rw.printf("%nIncremental lexing:%n"); //NOI18N
+        rw.printf("Full lexes: %d Relexes: %d Not converged: %d%n",   //NOI18N
+                fullLexes.get(),
+                relexes.get(),
+                unconverged.get());
+        final long relexed = relexedTokens.get();
+        final long reused = reusedTokens.get();
+        rw.printf("Relexed tokens: %d Reused tokens: %d (%.1f%%)%n",  //NOI18N
+                relexed,
+                reused,
+                relexed + reused == 0 ? 0 : 100.0 * reused / (relexed + reused));
+        if (verify) {
+            rw.printf("Verification mismatches: %d%n", mismatches.get()); //NOI18N
+        }
+        rw.flush();
+    }
+
+    private static State fullLex(
+            final String name,
+            final char[] content) {
+        final ECMAScript6Lexer lexer = createLexer(name, content);
+        final List<Token> tokens = new ArrayList<>();
+        final List<Checkpoint> checkpoints = new ArrayList<>();
+        checkpoints.add(new Checkpoint(0, 0, 1, 0, lexer.getLexerState()));
+        lexUntil(lexer, tokens, checkpoints, null);
+        return new State(content, tokens, checkpoints);
+    }
+
+    private State relex(
+            final State prev,
+            final String name,
+            final char[] content) {
+        final char[] oc = prev.content;
+        final int max = Math.min(oc.length, content.length);
+        int p = 0;
+        while (p < max && oc[p] == content[p]) {
+            p++;
+        }
+        int s = 0;
+        while (s < max - p && oc[oc.length - 1 - s] == content[content.length - 1 - s]) {
+            s++;
+        }
+        final int delta = content.length - oc.length;
+        final int damageEnd = content.length - s;
+        final int restart = findCheckpoint(prev.checkpoints, p);
+        final Checkpoint cp = prev.checkpoints.get(restart);
+        final ECMAScript6Lexer lexer = createLexer(name, content);
+        lexer.getInputStream().seek(cp.offset);
+        lexer.setLine(cp.line);
+        lexer.setCharPositionInLine(cp.column);
+        lexer.setLexerState(cp.state);
+        final List<Token> tokens = new ArrayList<>(prev.tokens.subList(0, cp.tokenIndex));
+        final List<Checkpoint> checkpoints = new ArrayList<>(prev.checkpoints.subList(0, restart + 1));
+        final Convergence conv = new Convergence(prev, delta, damageEnd);
+        lexUntil(lexer, tokens, checkpoints, conv);
+        relexes.incrementAndGet();
+        relexedTokens.addAndGet(tokens.size() - cp.tokenIndex);
+        if (conv.converged == null) {
+            unconverged.incrementAndGet();
+            return new State(content, tokens, checkpoints);
+        }
+        //Shift the old tokens and checkpoints after the convergence point
+        final Checkpoint old = conv.converged;
+        final Checkpoint now = checkpoints.get(checkpoints.size() - 1);
+        final int lineDelta = now.line - old.line;
+        final int indexDelta = now.tokenIndex - old.tokenIndex;
+        for (Token t : prev.tokens.subList(old.tokenIndex, prev.tokens.size())) {
+            final CommonToken ct = (CommonToken) t;
+            if (delta != 0) {
+                ct.setStartIndex(ct.getStartIndex() + delta);
+                ct.setStopIndex(ct.getStopIndex() + delta);
+            }
+            ct.setLine(ct.getLine() + lineDelta);
+            ct.setTokenIndex(ct.getTokenIndex() + indexDelta);
+            tokens.add(ct);
+        }
+        final int oldCp = findCheckpoint(prev.checkpoints, old.offset);
+        for (Checkpoint c : prev.checkpoints.subList(oldCp + 1, prev.checkpoints.size())) {
+            checkpoints.add(new Checkpoint(
+                    c.offset + delta,
+                    c.tokenIndex + indexDelta,
+                    c.line + lineDelta,
+                    c.column,
+                    c.state));
+        }
+        reusedTokens.addAndGet(prev.tokens.size() - old.tokenIndex);
+        return new State(content, tokens, checkpoints);
+    }
+
+    /**
+     * Lexes until the end of input or until the convergence with the old tokens.
+     */
+    private static void lexUntil(
+            final ECMAScript6Lexer lexer,
+            final List<Token> tokens,
+            final List<Checkpoint> checkpoints,
+            final Convergence conv) {
+        while (true) {
+            final Token t = lexer.nextToken();
+            ((CommonToken) t).setTokenIndex(tokens.size());
+            tokens.add(t);
+            if (t.getType() == Token.EOF) {
+                return;
+            }
+            if (t.getType() == ECMAScript6Lexer.EOL) {
+                final Checkpoint cp = new Checkpoint(
+                        t.getStopIndex() + 1,
+                        tokens.size(),
+                        lexer.getLine(),
+                        lexer.getCharPositionInLine(),
+                        lexer.getLexerState());
+                checkpoints.add(cp);
+                if (conv != null && conv.test(cp)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the last checkpoint at or before the offset.
+     */
+    private static int findCheckpoint(
+            final List<Checkpoint> checkpoints,
+            final int offset) {
+        int lo = 0;
+        int hi = checkpoints.size() - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (checkpoints.get(mid).offset <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private static ECMAScript6Lexer createLexer(
+            final String name,
+            final char[] content) {
+        final ANTLRInputStream in = new ANTLRInputStream(content, content.length);
+        in.name = name;
+        final ECMAScript6Lexer lexer = new ECMAScript6Lexer(in);
+        lexer.removeErrorListeners();
+        lexer.setTokenFactory(FACTORY);
+        return lexer;
+    }
+
+    private static boolean same(
+            final List<Token> a,
+            final List<Token> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            final Token t1 = a.get(i);
+            final Token t2 = b.get(i);
+            if (t1.getType() != t2.getType() ||
+                    t1.getChannel() != t2.getChannel() ||
+                    t1.getStartIndex() != t2.getStartIndex() ||
+                    t1.getStopIndex() != t2.getStopIndex() ||
+                    t1.getLine() != t2.getLine() ||
+                    t1.getCharPositionInLine() != t2.getCharPositionInLine() ||
+                    t1.getTokenIndex() != t2.getTokenIndex() ||
+                    !t1.getText().equals(t2.getText())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests whether a new checkpoint after the damaged region matches an old one.
+     */
+    private static final class Convergence {
+        private final State prev;
+        private final int delta;
+        private final int damageEnd;
+        Checkpoint converged;
+
+        Convergence(
+                final State prev,
+                final int delta,
+                final int damageEnd) {
+            this.prev = prev;
+            this.delta = delta;
+            this.damageEnd = damageEnd;
+        }
+
+        boolean test(final Checkpoint cp) {
+            //The line terminator itself has to be in the unchanged suffix
+            if (cp.offset - 1 < damageEnd) {
+                return false;
+            }
+            final int oldOffset = cp.offset - delta;
+            final int index = findCheckpoint(prev.checkpoints, oldOffset);
+            final Checkpoint old = prev.checkpoints.get(index);
+            if (old.offset == oldOffset &&
+                    old.column == cp.column &&
+                    old.state.equals(cp.state)) {
+                converged = old;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class Checkpoint {
+        final int offset;
+        final int tokenIndex;
+        final int line;
+        final int column;
+        final ECMAScript6Lexer.LexerState state;
+
+        Checkpoint(
+                final int offset,
+                final int tokenIndex,
+                final int line,
+                final int column,
+                final ECMAScript6Lexer.LexerState state) {
+            this.offset = offset;
+            this.tokenIndex = tokenIndex;
+            this.line = line;
+            this.column = column;
+            this.state = state;
+        }
+    }
+
+    private static final class State {
+        final char[] content;
+        final List<Token> tokens;
+        final List<Checkpoint> checkpoints;
+
+        State(
+                final char[] content,
+                final List<Token> tokens,
+                final List<Checkpoint> checkpoints) {
+            this.content = content;
+            this.tokens = tokens;
+            this.checkpoints = checkpoints;
+        }
+    }
+}
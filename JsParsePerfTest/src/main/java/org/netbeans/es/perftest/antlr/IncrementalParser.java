@@ -0,0 +1,571 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest.antlr;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.WritableToken;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.Tuple;
+import org.antlr.v4.runtime.misc.Tuple2;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.v4.runtime.tree.TerminalNodeImpl;
+import org.netbeans.es.perftest.ParserOptions;
+import org.netbeans.modules.javascript2.editor.parser6.ECMAScript6Lexer;
+import org.netbeans.modules.javascript2.editor.parser6.ECMAScript6Parser;
+import org.netbeans.modules.javascript2.editor.parser6.ECMAScript6Parser.ProgramContext;
+import org.netbeans.modules.javascript2.editor.parser6.ECMAScript6Parser.SourceElementContext;
+import org.netbeans.modules.javascript2.editor.parser6.ECMAScript6Parser.SourceElementsContext;
+
+/**
+ * Reparses just the top level source elements touched by an edit.
+ * The previous content, tokens and tree are kept per file name. The damaged
+ * region is found by a common prefix and suffix of the old and new content,
+ * extended to the enclosing top level source elements and one neighbour on
+ * each side. The region is relexed until the lexer resynchronizes with the old
+ * tokens, reparsed and spliced into the previous tree, the tokens of the reused
+ * subtrees after the region are remapped to the new offsets, the empty rules
+ * ending the subtree before the region are remapped to the first new token.
+ * Any edit which cannot be handled this way, including the edits producing
+ * syntax errors, falls back to the full parse. The verification against the
+ * full parse is deferred after the measured parse.
+ * @author Tomas Zezula
+ */
+final class IncrementalParser {
+    private final boolean verify;
+    private final Map<String,State> states = new ConcurrentHashMap<>();
+    private final Map<String,AtomicLong> fallbacks = new ConcurrentSkipListMap<>();
+    private final AtomicLong fullParses = new AtomicLong();
+    private final AtomicLong incrementalParses = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+    private final AtomicLong reparsedElements = new AtomicLong();
+    private final AtomicLong reusedElements = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+
+    IncrementalParser(final boolean verify) {
+        this.verify = verify;
+    }
+
+    /**
+     * Parses the content, incrementally when the file was parsed before.
+     * @param name the file path
+     * @param content the content
+     * @param options the options
+     * @param defer the consumer of the work to run after the measured parse
+     * @return true if the content was parsed without errors
+     */
+    boolean parse(
+            final String name,
+            final char[] content,
+            final ParserOptions options,
+            final Consumer<Runnable> defer) {
+        final State prev = states.remove(name);
+        State state = null;
+        if (prev != null) {
+            state = reparse(prev, name, content);
+            if (state != null && verify) {
+                final State incremental = state;
+                defer.accept(() -> verify(name, content, incremental, options));
+            }
+        }
+        if (state == null) {
+            fullParses.incrementAndGet();
+            state = fullParse(name, content, new ErrorListener(options.getProgressWriter(), options.isPrintError()));
+        }
+        if (state.valid) {
+            states.put(name, state);
+        }
+        return state.valid;
+    }
+
+    /**
+     * Compares the incremental result with the full parse, replaces the kept
+     * state by the full parse result on a mismatch.
+     */
+    private void verify(
+            final String name,
+            final char[] content,
+            final State state,
+            final ParserOptions options) {
+        final State full = fullParse(name, content, new ErrorListener(options.getProgressWriter(), options.isPrintError()));
+        if (!full.valid || !same(state, full)) {
+            mismatches.incrementAndGet();
+            fullParses.incrementAndGet();
+            if (full.valid) {
+                states.replace(name, state, full);
+            } else {
+                states.remove(name, state);
+            }
+        }
+    }
+
+    void report(final PrintWriter rw) {
+        rw.printf("%nIncremental parsing:%n"); //NOI18N
+        rw.printf("Full parses: %d Incremental parses: %d Unchanged: %d%n",    //NOI18N
+                fullParses.get(),
+                incrementalParses.get(),
+                unchanged.get());
+        final long reparsed = reparsedElements.get();
+        final long reused = reusedElements.get();
+        rw.printf("Reparsed source elements: %d Reused source elements: %d (%.1f%%)%n",  //NOI18N
+                reparsed,
+                reused,
+                reparsed + reused == 0 ? 0 : 100.0 * reused / (reparsed + reused));
+        if (verify) {
+            rw.printf("Verification mismatches: %d%n", mismatches.get()); //NOI18N
+        }
+        fallbacks.forEach((reason, count) -> rw.printf("Fallback %s: %d%n", reason, count.get()));   //NOI18N
+        rw.flush();
+    }
+
+    private State fullParse(
+            final String name,
+            final char[] content,
+            final ErrorListener errorListener) {
+        final ANTLRInputStream in = new ANTLRInputStream(content, content.length);
+        in.name = name;
+        final ECMAScript6Lexer lexer = new ECMAScript6Lexer(in);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(errorListener);
+        final CommonTokenStream tokens = new CommonTokenStream(lexer);
+        final ECMAScript6Parser parser = new ECMAScript6Parser(tokens);
+        parser.removeErrorListeners();
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(new BailErrorStrategy());
+        ProgramContext program;
+        try {
+            program = parser.program();
+        } catch (RuntimeException ex) {
+            if (ex.getCause() instanceof RecognitionException) {
+                tokens.reset();
+                parser.setErrorHandler(new DefaultErrorStrategy());
+                parser.addErrorListener(errorListener);
+                parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+                program = parser.program();
+            } else {
+                throw ex;
+            }
+        }
+        tokens.fill();
+        return new State(content, new ArrayList<>(tokens.getTokens()), program, !errorListener.hasErrors());
+    }
+
+    private State reparse(
+            final State prev,
+            final String name,
+            final char[] content) {
+        final char[] oc = prev.content;
+        final int max = Math.min(oc.length, content.length);
+        int p = 0;
+        while (p < max && oc[p] == content[p]) {
+            p++;
+        }
+        if (p == oc.length && p == content.length) {
+            unchanged.incrementAndGet();
+            return new State(content, prev.tokens, prev.program, true);
+        }
+        int s = 0;
+        while (s < max - p && oc[oc.length - 1 - s] == content[content.length - 1 - s]) {
+            s++;
+        }
+        final int damageEnd = oc.length - s;
+        final int delta = content.length - oc.length;
+        final SourceElementsContext se = prev.program.sourceElements();
+        if (se == null) {
+            return fallback("empty program");   //NOI18N
+        }
+        final List<? extends SourceElementContext> els = se.sourceElement();
+        final int n = els.size();
+        int first = 0;
+        while (first < n && els.get(first).stop.getStopIndex() < p) {
+            first++;
+        }
+        int last = n - 1;
+        while (last >= 0 && els.get(last).start.getStartIndex() >= damageEnd) {
+            last--;
+        }
+        final boolean fromStart = first == 0;
+        final boolean toEnd = last + 1 >= n;
+        final int lo = fromStart ? 0 : first - 1;
+        final int hi = toEnd ? n - 1 : last + 1;
+        final Token loStart = els.get(lo).start;
+        final int regionStart = fromStart ? 0 : loStart.getStartIndex();
+        final int prefixTokens = fromStart ? 0 : loStart.getTokenIndex();
+        final int suffixFrom = toEnd ? prev.tokens.size() : els.get(hi).stop.getTokenIndex() + 1;
+        final Token oldSync = toEnd ? null : prev.tokens.get(suffixFrom);
+
+        //Relex the region until the lexer resynchronizes with the old tokens
+        final ANTLRInputStream in = new ANTLRInputStream(content, content.length);
+        in.name = name;
+        final ECMAScript6Lexer lexer = new ECMAScript6Lexer(in);
+        final ErrorListener lexErrors = new ErrorListener(new PrintWriter(new StringWriter()), false);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(lexErrors);
+        in.seek(regionStart);
+        if (!fromStart) {
+            lexer.setLine(loStart.getLine());
+            lexer.setCharPositionInLine(loStart.getCharPositionInLine());
+        }
+        final List<Token> region = new ArrayList<>();
+        Token sync = null;
+        while (true) {
+            final Token t = lexer.nextToken();
+            if (!toEnd && (t.getStartIndex() >= oldSync.getStartIndex() + delta || t.getType() == Token.EOF)) {
+                sync = t;
+                break;
+            }
+            region.add(t);
+            if (t.getType() == Token.EOF) {
+                break;
+            }
+        }
+        if (lexErrors.hasErrors()) {
+            return fallback("lexer error"); //NOI18N
+        }
+        if (sync != null && (sync.getStartIndex() != oldSync.getStartIndex() + delta ||
+                sync.getType() != oldSync.getType() ||
+                sync.getChannel() != oldSync.getChannel())) {
+            return fallback("lexer not resynchronized");   //NOI18N
+        }
+
+        //Shifted copies of the tokens after the region
+        final Tuple2<TokenSource,CharStream> source = Tuple.<TokenSource,CharStream>create(lexer, in);
+        final Map<Token,Token> remap = new IdentityHashMap<>();
+        final List<Token> suffix = new ArrayList<>(prev.tokens.size() - suffixFrom);
+        if (sync != null) {
+            final int lineDelta = sync.getLine() - oldSync.getLine();
+            final int colDelta = sync.getCharPositionInLine() - oldSync.getCharPositionInLine();
+            for (Token t : prev.tokens.subList(suffixFrom, prev.tokens.size())) {
+                final CommonToken c = new CommonToken(
+                        source,
+                        t.getType(),
+                        t.getChannel(),
+                        t.getType() == Token.EOF ? content.length : t.getStartIndex() + delta,
+                        t.getType() == Token.EOF ? content.length - 1 : t.getStopIndex() + delta);
+                c.setLine(t.getLine() + lineDelta);
+                c.setCharPositionInLine(t.getLine() == oldSync.getLine() ?
+                        t.getCharPositionInLine() + colDelta :
+                        t.getCharPositionInLine());
+                suffix.add(c);
+                remap.put(t, c);
+            }
+        }
+
+        //Reparse the region with one token of left context and the whole suffix as right context
+        final List<Token> streamTokens = new ArrayList<>(1 + region.size() + suffix.size());
+        if (prefixTokens > 0) {
+            streamTokens.add(prev.tokens.get(prefixTokens - 1));
+        }
+        final int startIndex = streamTokens.size();
+        streamTokens.addAll(region);
+        int target = streamTokens.size();
+        streamTokens.addAll(suffix);
+        while (target < streamTokens.size() - 1 && streamTokens.get(target).getChannel() != Token.DEFAULT_CHANNEL) {
+            target++;
+        }
+        if (toEnd) {
+            target = streamTokens.size() - 1;
+        }
+        final CommonTokenStream tokens = new CommonTokenStream(new ListTokenSource(streamTokens));
+        final ECMAScript6Parser parser = new ECMAScript6Parser(tokens);
+        parser.removeErrorListeners();
+        List<SourceElementContext> newEls;
+        try {
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            parser.setErrorHandler(new BailErrorStrategy());
+            newEls = parseElements(parser, tokens, startIndex, target);
+        } catch (RuntimeException ex) {
+            if (ex.getCause() instanceof RecognitionException) {
+                final ErrorListener parseErrors = new ErrorListener(new PrintWriter(new StringWriter()), false);
+                parser.reset();
+                parser.setErrorHandler(new DefaultErrorStrategy());
+                parser.addErrorListener(parseErrors);
+                parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+                newEls = parseElements(parser, tokens, startIndex, target);
+                if (parseErrors.hasErrors()) {
+                    return fallback("syntax error");    //NOI18N
+                }
+            } else {
+                throw ex;
+            }
+        }
+        if (newEls == null) {
+            return fallback("region boundary moved");   //NOI18N
+        }
+        if (newEls.isEmpty() && lo == 0 && hi == n - 1) {
+            return fallback("empty program");   //NOI18N
+        }
+
+        //Splice tokens
+        final List<Token> newTokens = new ArrayList<>(prefixTokens + region.size() + suffix.size());
+        newTokens.addAll(prev.tokens.subList(0, prefixTokens));
+        newTokens.addAll(region);
+        newTokens.addAll(suffix);
+        for (int i = Math.max(0, prefixTokens - 1); i < newTokens.size(); i++) {
+            ((WritableToken) newTokens.get(i)).setTokenIndex(i);
+        }
+        //Splice tree
+        if (lo > 0) {
+            int next = prefixTokens;
+            while (newTokens.get(next).getChannel() != Token.DEFAULT_CHANNEL &&
+                    newTokens.get(next).getType() != Token.EOF) {
+                next++;
+            }
+            remapTrailingEmpty(els.get(lo - 1), prefixTokens, newTokens.get(next));
+        }
+        for (SourceElementContext el : els.subList(hi + 1, n)) {
+            remapTokens(el, remap);
+        }
+        final int invokingState = els.get(0).invokingState;
+        final List<ParseTree> children = new ArrayList<>(n - (hi - lo + 1) + newEls.size());
+        children.addAll(se.children.subList(0, lo));
+        for (SourceElementContext el : newEls) {
+            el.parent = se;
+            el.invokingState = invokingState;
+            children.add(el);
+        }
+        children.addAll(se.children.subList(hi + 1, n));
+        se.children = children;
+        se.start = ((ParserRuleContext) children.get(0)).start;
+        se.stop = ((ParserRuleContext) children.get(children.size() - 1)).stop;
+        final Token eof = newTokens.get(newTokens.size() - 1);
+        final ProgramContext program = prev.program;
+        for (ParseTree child : program.children) {
+            if (child instanceof TerminalNodeImpl) {
+                ((TerminalNodeImpl) child).symbol = eof;
+            }
+        }
+        program.start = se.start;
+        program.stop = se.stop;
+        incrementalParses.incrementAndGet();
+        reparsedElements.addAndGet(newEls.size());
+        reusedElements.addAndGet(n - (hi - lo + 1));
+        return new State(content, newTokens, program, true);
+    }
+
+    /**
+     * Parses source elements until the target token index.
+     * @return the parsed elements or null when the parse does not end exactly at the target
+     */
+    private static List<SourceElementContext> parseElements(
+            final ECMAScript6Parser parser,
+            final CommonTokenStream tokens,
+            final int startIndex,
+            final int target) {
+        tokens.seek(startIndex);
+        final List<SourceElementContext> res = new ArrayList<>();
+        while (tokens.index() < target) {
+            res.add(parser.sourceElement());
+        }
+        return tokens.index() == target ? res : null;
+    }
+
+    private static void remapTokens(
+            final ParseTree root,
+            final Map<Token,Token> remap) {
+        final Deque<ParseTree> todo = new ArrayDeque<>();
+        todo.push(root);
+        while (!todo.isEmpty()) {
+            final ParseTree node = todo.pop();
+            if (node instanceof TerminalNodeImpl) {
+                final TerminalNodeImpl tn = (TerminalNodeImpl) node;
+                tn.symbol = remap.getOrDefault(tn.symbol, tn.symbol);
+            } else if (node instanceof ParserRuleContext) {
+                final ParserRuleContext ctx = (ParserRuleContext) node;
+                ctx.start = remap.getOrDefault(ctx.start, ctx.start);
+                ctx.stop = remap.getOrDefault(ctx.stop, ctx.stop);
+                if (ctx.children != null) {
+                    ctx.children.forEach(todo::push);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remaps the empty rules at the end of a reused subtree preceding the region.
+     * The start of an empty rule is the following token, which is an old token
+     * from the region, the stop is the preceding token which is reused.
+     * @param root the subtree
+     * @param firstIndex the index of the first old token of the region
+     * @param next the first new token on the default channel after the subtree
+     */
+    private static void remapTrailingEmpty(
+            final ParserRuleContext root,
+            final int firstIndex,
+            final Token next) {
+        ParserRuleContext ctx = root;
+        while (ctx != null) {
+            if (ctx.start.getTokenIndex() >= firstIndex) {
+                ctx.start = next;
+            }
+            ParserRuleContext last = null;
+            if (ctx.children != null) {
+                for (int i = ctx.children.size() - 1; i >= 0; i--) {
+                    final ParseTree child = ctx.children.get(i);
+                    if (!(child instanceof ParserRuleContext)) {
+                        break;
+                    }
+                    final ParserRuleContext pc = (ParserRuleContext) child;
+                    if (pc.start.getTokenIndex() >= firstIndex) {
+                        remapTrailingEmpty(pc, firstIndex, next);
+                    } else {
+                        last = pc;
+                        break;
+                    }
+                }
+            }
+            ctx = last;
+        }
+    }
+
+    private State fallback(final String reason) {
+        fallbacks.computeIfAbsent(reason, (k) -> new AtomicLong()).incrementAndGet();
+        return null;
+    }
+
+    private static boolean same(
+            final State a,
+            final State b) {
+        if (a.tokens.size() != b.tokens.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.tokens.size(); i++) {
+            if (!same(a.tokens.get(i), b.tokens.get(i))) {
+                return false;
+            }
+        }
+        return sameTree(a.program, b.program);
+    }
+
+    /**
+     * Compares two parse trees including the invoking states and the tokens.
+     * @param a the first tree
+     * @param b the second tree
+     * @return true if the trees are the same
+     */
+    static boolean sameTree(
+            final ParseTree a,
+            final ParseTree b) {
+        final Deque<ParseTree[]> todo = new ArrayDeque<>();
+        todo.push(new ParseTree[] {a, b});
+        while (!todo.isEmpty()) {
+            final ParseTree[] pair = todo.pop();
+            if (pair[0].getClass() != pair[1].getClass() ||
+                    pair[0].getChildCount() != pair[1].getChildCount()) {
+                return false;
+            }
+            if (pair[0] instanceof TerminalNode) {
+                if (!same(((TerminalNode) pair[0]).getSymbol(), ((TerminalNode) pair[1]).getSymbol())) {
+                    return false;
+                }
+            } else if (pair[0] instanceof ParserRuleContext) {
+                final ParserRuleContext c0 = (ParserRuleContext) pair[0];
+                final ParserRuleContext c1 = (ParserRuleContext) pair[1];
+                if (c0.invokingState != c1.invokingState ||
+                        !same(c0.start, c1.start) ||
+                        !same(c0.stop, c1.stop)) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < pair[0].getChildCount(); i++) {
+                todo.push(new ParseTree[] {pair[0].getChild(i), pair[1].getChild(i)});
+            }
+        }
+        return true;
+    }
+
+    private static boolean same(
+            final Token a,
+            final Token b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getType() == b.getType() &&
+                a.getChannel() == b.getChannel() &&
+                a.getStartIndex() == b.getStartIndex() &&
+                a.getStopIndex() == b.getStopIndex() &&
+                a.getLine() == b.getLine() &&
+                a.getCharPositionInLine() == b.getCharPositionInLine() &&
+                a.getTokenIndex() == b.getTokenIndex() &&
+                a.getText().equals(b.getText());
+    }
+
+    private static final class State {
+        final char[] content;
+        final List<Token> tokens;
+        final ProgramContext program;
+        final boolean valid;
+
+        State(
+                final char[] content,
+                final List<Token> tokens,
+                final ProgramContext program,
+                final boolean valid) {
+            this.content = content;
+            this.tokens = tokens;
+            this.program = program;
+            this.valid = valid;
+        }
+    }
+}
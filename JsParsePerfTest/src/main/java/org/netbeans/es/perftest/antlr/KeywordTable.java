@@ -0,0 +1,228 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest.antlr;
+
+import org.antlr.v4.runtime.CharStream;
+import static org.netbeans.modules.javascript2.editor.parser6.ECMAScript6Lexer.*;
+
+/**
+ * Classifies identifiers into keywords, reserved words and literals using a
+ * perfect hash.
+ * The hash {@code (c[0] * 35 + c[1] * 2 + c[len - 1] * 5 + len) & 127} has no
+ * collisions for the keywords, so a lookup is one hash and one text compare.
+ * The {@code canFollowKeyword} and {@code canFollowReservedKeyword} rules of
+ * the grammar are applied here.
+ * @author Tomas Zezula
+ */
+public final class KeywordTable {
+
+    private static final int SIZE = 128;
+    private static final int MUL_FIRST = 35;
+    private static final int MUL_SECOND = 2;
+    private static final int MUL_LAST = 5;
+    private static final int MIN_LENGTH = 2;
+    private static final int MAX_LENGTH = 10;
+
+    private static final byte KIND_LITERAL = 0;
+    private static final byte KIND_KEYWORD = 1;
+    private static final byte KIND_RESERVED = 2;
+
+    private static final char[][] TEXTS = new char[SIZE][];
+    private static final int[] TYPES = new int[SIZE];
+    private static final byte[] KINDS = new byte[SIZE];
+
+    static {
+        put("break", KEYWORD_BREAK, KIND_KEYWORD);
+        put("do", KEYWORD_DO, KIND_KEYWORD);
+        put("in", KEYWORD_IN, KIND_KEYWORD);
+        put("typeof", KEYWORD_TYPEOF, KIND_KEYWORD);
+        put("case", KEYWORD_CASE, KIND_KEYWORD);
+        put("else", KEYWORD_ELSE, KIND_KEYWORD);
+        put("instanceof", KEYWORD_INSTANCEOF, KIND_KEYWORD);
+        put("var", KEYWORD_VAR, KIND_KEYWORD);
+        put("catch", KEYWORD_CATCH, KIND_KEYWORD);
+        put("export", KEYWORD_EXPORT, KIND_KEYWORD);
+        put("new", KEYWORD_NEW, KIND_KEYWORD);
+        put("void", KEYWORD_VOID, KIND_KEYWORD);
+        put("class", KEYWORD_CLASS, KIND_KEYWORD);
+        put("extends", KEYWORD_EXTENDS, KIND_KEYWORD);
+        put("return", KEYWORD_RETURN, KIND_KEYWORD);
+        put("while", KEYWORD_WHILE, KIND_KEYWORD);
+        put("const", KEYWORD_CONST, KIND_KEYWORD);
+        put("finally", KEYWORD_FINALLY, KIND_KEYWORD);
+        put("super", KEYWORD_SUPER, KIND_KEYWORD);
+        put("with", KEYWORD_WITH, KIND_KEYWORD);
+        put("continue", KEYWORD_CONTINUE, KIND_KEYWORD);
+        put("for", KEYWORD_FOR, KIND_KEYWORD);
+        put("of", KEYWORD_OF, KIND_KEYWORD);
+        put("switch", KEYWORD_SWITCH, KIND_KEYWORD);
+        put("yield", KEYWORD_YIELD, KIND_KEYWORD);
+        put("debugger", KEYWORD_DEBUGGER, KIND_KEYWORD);
+        put("function", KEYWORD_FUNCTION, KIND_KEYWORD);
+        put("this", KEYWORD_THIS, KIND_KEYWORD);
+        put("default", KEYWORD_DEFAULT, KIND_KEYWORD);
+        put("if", KEYWORD_IF, KIND_KEYWORD);
+        put("throw", KEYWORD_THROW, KIND_KEYWORD);
+        put("delete", KEYWORD_DELETE, KIND_KEYWORD);
+        put("import", KEYWORD_IMPORT, KIND_KEYWORD);
+        put("try", KEYWORD_TRY, KIND_KEYWORD);
+        put("enum", RESERVED_ENUM, KIND_KEYWORD);
+        put("await", RESERVED_AWAIT, KIND_RESERVED);
+        put("implements", RESERVED_IMPLEMENTS, KIND_RESERVED);
+        put("package", RESERVED_PACKAGE, KIND_RESERVED);
+        put("protected", RESERVED_PROTECTED, KIND_RESERVED);
+        put("interface", RESERVED_INTERFACE, KIND_RESERVED);
+        put("private", RESERVED_PRIVATE, KIND_RESERVED);
+        put("public", RESERVED_PUBLIC, KIND_RESERVED);
+        put("static", RESERVED_STATIC, KIND_RESERVED);
+        put("let", RESERVED_LET, KIND_RESERVED);
+        put("as", RESERVED_AS, KIND_RESERVED);
+        put("from", RESERVED_FROM, KIND_RESERVED);
+        put("null", LITERAL_NULL, KIND_LITERAL);
+        put("true", LITERAL_TRUE, KIND_LITERAL);
+        put("false", LITERAL_FALSE, KIND_LITERAL);
+    }
+
+    private KeywordTable() {
+        throw new IllegalStateException("No instance allowed.");    //NOI18N
+    }
+
+    /**
+     * Returns the token type of an identifier.
+     * @param data the input
+     * @param start the identifier start
+     * @param end the identifier end (exclusive)
+     * @param lastTokenId the type of the previous token on the default channel
+     * @return the keyword type or {@code IDENTIFIER}
+     */
+    public static int classify(
+            final char[] data,
+            final int start,
+            final int end,
+            final int lastTokenId) {
+        final int len = end - start;
+        if (len < MIN_LENGTH || len > MAX_LENGTH) {
+            return IDENTIFIER;
+        }
+        final int slot = hash(data[start], data[start + 1], data[end - 1], len);
+        final char[] text = TEXTS[slot];
+        if (text == null || text.length != len) {
+            return IDENTIFIER;
+        }
+        for (int i = 0; i < len; i++) {
+            if (text[i] != data[start + i]) {
+                return IDENTIFIER;
+            }
+        }
+        return resolve(slot, lastTokenId);
+    }
+
+    /**
+     * Returns the token type of an identifier just matched by a lexer.
+     * @param in the lexer input positioned after the identifier
+     * @param start the identifier start
+     * @param lastTokenId the type of the previous token on the default channel
+     * @return the keyword type or {@code IDENTIFIER}
+     */
+    public static int classify(
+            final CharStream in,
+            final int start,
+            final int lastTokenId) {
+        final int len = in.index() - start;
+        if (len < MIN_LENGTH || len > MAX_LENGTH) {
+            return IDENTIFIER;
+        }
+        final int slot = hash(in.LA(-len), in.LA(1 - len), in.LA(-1), len);
+        final char[] text = TEXTS[slot];
+        if (text == null || text.length != len) {
+            return IDENTIFIER;
+        }
+        for (int i = 0; i < len; i++) {
+            if (text[i] != in.LA(i - len)) {
+                return IDENTIFIER;
+            }
+        }
+        return resolve(slot, lastTokenId);
+    }
+
+    private static int resolve(
+            final int slot,
+            final int lastTokenId) {
+        switch (KINDS[slot]) {
+            case KIND_KEYWORD:
+                return lastTokenId == PUNCTUATOR_DOT ?
+                        IDENTIFIER :
+                        TYPES[slot];
+            case KIND_RESERVED:
+                return lastTokenId == PUNCTUATOR_DOT ||
+                        lastTokenId == PUNCTUATOR_ASSIGNMENT ||
+                        lastTokenId == BRACKET_LEFT_BRACKET ||
+                        lastTokenId == KEYWORD_IN ?
+                        IDENTIFIER :
+                        TYPES[slot];
+            default:
+                return TYPES[slot];
+        }
+    }
+
+    private static int hash(
+            final int first,
+            final int second,
+            final int last,
+            final int len) {
+        return (first * MUL_FIRST + second * MUL_SECOND + last * MUL_LAST + len) & (SIZE - 1);
+    }
+
+    private static void put(
+            final String keyword,
+            final int type,
+            final byte kind) {
+        final char[] text = keyword.toCharArray();
+        final int slot = hash(text[0], text[1], text[text.length - 1], text.length);
+        if (TEXTS[slot] != null) {
+            throw new IllegalStateException("Hash collision: " + keyword);  //NOI18N
+        }
+        TEXTS[slot] = text;
+        TYPES[slot] = type;
+        KINDS[slot] = kind;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest.antlr;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Interval;
+import org.netbeans.modules.javascript2.editor.parser6.ECMAScript6HashLexer;
+import org.netbeans.modules.javascript2.editor.parser6.ECMAScript6Lexer;
+import org.netbeans.modules.javascript2.editor.parser6.ECMAScript6Parser;
+
+/**
+ * Differential check of a lexer against the generated {@link ECMAScript6Lexer}.
+ * Compares type, channel, offsets, line and column of each token.
+ * Besides the corpus files the built-in edge cases are checked on report.
+ * @author Tomas Zezula
+ */
+final class LexerCheck {
+    private static final String CASE = "case: ";    //NOI18N
+    private static final String[] CASES = {
+        "/**/", //NOI18N
+        "/**/a",    //NOI18N
+        "(/**/a",   //NOI18N
+        "x)/**/a",  //NOI18N
+        "x]/**/a/g",    //NOI18N
+        "/**/ x */",    //NOI18N
+        "/***/ a",  //NOI18N
+        "/** doc */ a /* block */ b",   //NOI18N
+        "/*/ x */ a",   //NOI18N
+        "a /**//b/",    //NOI18N
+        "/** x /**/ y", //NOI18N
+        "/**"   //NOI18N
+    };
+
+    private final Function<CharStream,TokenSource> candidate;
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong tokens = new AtomicLong();
+    private final Map<String,String> mismatches = new ConcurrentSkipListMap<>();
+
+    LexerCheck(final Function<CharStream,TokenSource> candidate) {
+        this.candidate = candidate;
+    }
+
+    /**
+     * Lexes the input by both lexers and compares the tokens.
+     * @param in the input
+     * @return true if the tokens are the same
+     */
+    boolean check(final CharStream in) {
+        files.incrementAndGet();
+        final ECMAScript6Lexer expected = new ECMAScript6Lexer(in);
+        expected.removeErrorListeners();
+        //Both lexers consume the stream, the candidate gets a copy
+        final ANTLRInputStream copy = new ANTLRInputStream(in.size() == 0 ?
+                "" :    //NOI18N
+                in.getText(Interval.of(0, in.size() - 1)));
+        copy.name = in.getSourceName();
+        final TokenSource actual = candidate.apply(copy);
+        for (int index = 0;; index++) {
+            final Token t1 = expected.nextToken();
+            final Token t2 = actual.nextToken();
+            if (t1.getType() != t2.getType() ||
+                    t1.getChannel() != t2.getChannel() ||
+                    t1.getStartIndex() != t2.getStartIndex() ||
+                    t1.getStopIndex() != t2.getStopIndex() ||
+                    t1.getLine() != t2.getLine() ||
+                    t1.getCharPositionInLine() != t2.getCharPositionInLine()) {
+                mismatches.put(
+                        in.getSourceName(),
+                        String.format("token %d expected: %s actual: %s",  //NOI18N
+                                index,
+                                toString(t1),
+                                toString(t2)));
+                return false;
+            }
+            if (t1.getType() == Token.EOF) {
+                tokens.addAndGet(index);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Adds the results of other check.
+     * @param other the check to add
+     */
+    void add(final LexerCheck other) {
+        files.addAndGet(other.files.get());
+        tokens.addAndGet(other.tokens.get());
+        mismatches.putAll(other.mismatches);
+    }
+
+    void report(final PrintWriter rw) {
+        for (String c : CASES) {
+            final ANTLRInputStream in = new ANTLRInputStream(c);
+            in.name = CASE + c;
+            check(in);
+        }
+        rw.printf("%nLexer check:%n");    //NOI18N
+        rw.printf("Files: %d Tokens: %d Mismatched files: %d%n",   //NOI18N
+                files.get(),
+                tokens.get(),
+                mismatches.size());
+        for (Map.Entry<String,String> e : mismatches.entrySet()) {
+            rw.printf("%s: %s%n", e.getKey(), e.getValue());  //NOI18N
+        }
+        rw.flush();
+    }
+
+    /**
+     * Checks that the token types of the {@link ECMAScript6HashLexer} mean the
+     * same as the types of the generated {@link ECMAScript6Lexer}.
+     * The hash lexer grammar is a copy of the coloring tokens importing the
+     * parser vocabulary, a drift of the copy shows up as a renumbered or
+     * a new token type. The types the generated lexer does not define have
+     * to be the parser implicit tokens.
+     * @throws IllegalStateException when the types differ
+     */
+    static void checkVocabulary() {
+        final int max = Math.max(
+                ECMAScript6HashLexer.tokenNames.length,
+                ECMAScript6Lexer.tokenNames.length);
+        for (int type = 1; type < max; type++) {
+            final String actual = ECMAScript6HashLexer.VOCABULARY.getSymbolicName(type);
+            String expected = ECMAScript6Lexer.VOCABULARY.getSymbolicName(type);
+            if (expected == null && actual != null) {
+                expected = ECMAScript6Parser.VOCABULARY.getSymbolicName(type);
+            }
+            if (expected == null ? actual != null : !expected.equals(actual)) {
+                throw new IllegalStateException(String.format(
+                        "Token type %d of ECMAScript6HashLexer: %s, ECMAScript6Lexer: %s",   //NOI18N
+                        type,
+                        actual,
+                        expected));
+            }
+        }
+    }
+
+    private static String toString(final Token t) {
+        return String.format("%s[%d..%d]@%d:%d channel %d",  //NOI18N
+                t.getType() == Token.EOF ?
+                        "EOF" : //NOI18N
+                        ECMAScript6Lexer.VOCABULARY.getSymbolicName(t.getType()),
+                t.getStartIndex(),
+                t.getStopIndex(),
+                t.getLine(),
+                t.getCharPositionInLine(),
+                t.getChannel());
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest.antlr;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+import org.antlr.v4.runtime.atn.DecisionState;
+import org.antlr.v4.runtime.atn.ProfilingATNSimulator;
+
+/**
+ * Per decision prediction profile collected by the {@link ProfilingATNSimulator}.
+ * The decisions are mapped to the rule and its line in the grammar.
+ * @author Tomas Zezula
+ */
+final class PredictionProfile {
+    private static final String GRAMMAR = "ECMAScript6.g4";    //NOI18N
+    private static final Pattern RULE_START = Pattern.compile("^([a-z]\\w*)\\b");    //NOI18N
+
+    private final ATN atn;
+    private final long[] invocations;
+    private final long[] time;
+    private final long[] sllTotal;
+    private final long[] sllMax;
+    private final long[] llFallbacks;
+    private final long[] llTotal;
+    private final long[] llMax;
+    private final long[] ambiguities;
+    private final long[] contextSensitivities;
+    private final long[] errors;
+
+    PredictionProfile(final ATN atn) {
+        this.atn = atn;
+        final int decisions = atn.getNumberOfDecisions();
+        invocations = new long[decisions];
+        time = new long[decisions];
+        sllTotal = new long[decisions];
+        sllMax = new long[decisions];
+        llFallbacks = new long[decisions];
+        llTotal = new long[decisions];
+        llMax = new long[decisions];
+        ambiguities = new long[decisions];
+        contextSensitivities = new long[decisions];
+        errors = new long[decisions];
+    }
+
+    /**
+     * Creates a profiling simulator for the parser.
+     * @param parser the parser
+     * @return the simulator to be added by {@link #add}
+     */
+    static ProfilingATNSimulator createSimulator(final Parser parser) {
+        final ProfilingATNSimulator sim = new ProfilingATNSimulator(parser);
+        //The fork reports ambiguities only when asked to
+        sim.reportAmbiguities = true;
+        return sim;
+    }
+
+    /**
+     * Adds the profile of a finished parse.
+     * @param sim the simulator used by the parse
+     */
+    synchronized void add(final ProfilingATNSimulator sim) {
+        for (DecisionInfo info : sim.getDecisionInfo()) {
+            final int d = info.decision;
+            invocations[d] += info.invocations;
+            time[d] += info.timeInPrediction;
+            sllTotal[d] += info.SLL_TotalLook;
+            sllMax[d] = Math.max(sllMax[d], info.SLL_MaxLook);
+            llFallbacks[d] += info.LL_Fallback;
+            llTotal[d] += info.LL_TotalLook;
+            llMax[d] = Math.max(llMax[d], info.LL_MaxLook);
+            ambiguities[d] += info.ambiguities.size();
+            contextSensitivities[d] += info.contextSensitivities.size();
+            errors[d] += info.errors.size();
+        }
+    }
+
+    /**
+     * Adds the profile collected by other instance.
+     * @param other the profile to add
+     */
+    synchronized void add(final PredictionProfile other) {
+        synchronized (other) {
+            for (int d = 0; d < invocations.length; d++) {
+                invocations[d] += other.invocations[d];
+                time[d] += other.time[d];
+                sllTotal[d] += other.sllTotal[d];
+                sllMax[d] = Math.max(sllMax[d], other.sllMax[d]);
+                llFallbacks[d] += other.llFallbacks[d];
+                llTotal[d] += other.llTotal[d];
+                llMax[d] = Math.max(llMax[d], other.llMax[d]);
+                ambiguities[d] += other.ambiguities[d];
+                contextSensitivities[d] += other.contextSensitivities[d];
+                errors[d] += other.errors[d];
+            }
+        }
+    }
+
+    /**
+     * Prints the decisions ordered by the prediction time.
+     * @param rw the report writer
+     * @param ruleNames the parser rule names
+     * @param limit the max number of decisions or -1 for all
+     */
+    synchronized void report(
+            final PrintWriter rw,
+            final String[] ruleNames,
+            final int limit) {
+        final Map<String,Integer> lines = ruleLines(ruleNames);
+        final Integer[] order = new Integer[invocations.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(time[b], time[a]));
+        long totalTime = 0;
+        for (long t : time) {
+            totalTime += t;
+        }
+        rw.printf("%nPrediction profile, total prediction time: %.3fms%n", totalTime / 1e6);  //NOI18N
+        rw.println("Decision\tRule\tLine\tKind\tInvocations\tTime\tSLL total/avg/max\tLL fallbacks\tLL total/avg/max\tAmbiguities\tContext sensitivities\tErrors");  //NOI18N
+        int printed = 0;
+        for (int d : order) {
+            if (invocations[d] == 0 || (limit >= 0 && printed >= limit)) {
+                break;
+            }
+            final DecisionState state = atn.getDecisionState(d);
+            final String rule = ruleNames[state.ruleIndex];
+            final Integer line = lines.get(rule);
+            rw.printf("%d\t%s\t%s\t%s\t%d\t%.3fms\t%d/%.2f/%d\t%d\t%d/%.2f/%d\t%d\t%d\t%d%n",   //NOI18N
+                    d,
+                    rule,
+                    line == null ? "?" : GRAMMAR + ":" + line, //NOI18N
+                    kind(state),
+                    invocations[d],
+                    time[d] / 1e6,
+                    sllTotal[d],
+                    (double) sllTotal[d] / invocations[d],
+                    sllMax[d],
+                    llFallbacks[d],
+                    llTotal[d],
+                    llFallbacks[d] == 0 ? 0.0 : (double) llTotal[d] / llFallbacks[d],
+                    llMax[d],
+                    ambiguities[d],
+                    contextSensitivities[d],
+                    errors[d]);
+            printed++;
+        }
+        rw.flush();
+    }
+
+    private static String kind(final DecisionState state) {
+        final String name = state.getClass().getSimpleName();
+        return name.endsWith("State") ? //NOI18N
+                name.substring(0, name.length() - 5) :
+                name;
+    }
+
+    /**
+     * Finds the lines of the rule definitions in the grammar.
+     * @param ruleNames the rule names
+     * @return the map of rule name to line, empty when the grammar is not available
+     */
+    private static Map<String,Integer> ruleLines(final String[] ruleNames) {
+        final Map<String,Integer> res = new HashMap<>();
+        final Set<String> rules = new HashSet<>(Arrays.asList(ruleNames));
+        try (InputStream in = PredictionProfile.class.getResourceAsStream(GRAMMAR)) {
+            if (in != null) {
+                final BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                int lineNo = 0;
+                for (String line = r.readLine(); line != null; line = r.readLine()) {
+                    lineNo++;
+                    final Matcher m = RULE_START.matcher(line);
+                    if (m.find() && rules.contains(m.group(1))) {
+                        res.putIfAbsent(m.group(1), lineNo);
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            //Report without lines
+        }
+        return res;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common
+ * Development and Distribution License("CDDL") (collectively, the
+ * "License"). You may not use this file except in compliance with the
+ * License. You can obtain a copy of the License at
+ * http://www.netbeans.org/cddl-gplv2.html
+ * or nbbuild/licenses/CDDL-GPL-2-CP. See the License for the
+ * specific language governing permissions and limitations under the
+ * License.  When distributing the software, include this License Header
+ * Notice in each file and include the License file at
+ * nbbuild/licenses/CDDL-GPL-2-CP.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the GPL Version 2 section of the License file that
+ * accompanied this code. If applicable, add the following below the
+ * License Header, with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * If you wish your version of this file to be governed by only the CDDL
+ * or only the GPL Version 2, indicate your decision by adding
+ * "[Contributor] elects to include this software in this distribution
+ * under the [CDDL or GPL Version 2] license." If you do not indicate a
+ * single choice of license, a recipient has the option to distribute
+ * your version of this file under either the CDDL, the GPL Version 2 or
+ * to extend the choice of license to its licensees as provided above.
+ * However, if you add GPL Version 2 code and therefore, elected the GPL
+ * Version 2 license, then the option applies only if the new code is
+ * made subject to such option by the copyright holder.
+ *
+ * Contributor(s):
+ *
+ * Portions Copyrighted 2015 Sun Microsystems, Inc.
+ */
+package org.netbeans.es.perftest.antlr;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.dfa.DFA;
+
+/**
+ * Estimates the retained heap size of an object graph by a reachability walk.
+ * The shallow sizes follow the 64bit HotSpot layout with compressed oops,
+ * the shared parser infrastructure (recognizers, ATN, DFA) is not counted.
+ * @author Tomas Zezula
+ */
+final class RetainedSize {
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int ALIGNMENT = 8;
+    private static final Map<Class<?>,ClassInfo> infos = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>,long[]> perClass;
+    private long bytes;
+    private long objects;
+
+    private RetainedSize() {
+        perClass = new HashMap<>();
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    long getObjects() {
+        return objects;
+    }
+
+    /**
+     * Returns the instances count and bytes per class.
+     * @return the map of class to pair of count and bytes
+     */
+    Map<Class<?>,long[]> getPerClass() {
+        return Collections.unmodifiableMap(perClass);
+    }
+
+    /**
+     * Measures the objects reachable from the given roots.
+     * @param roots the roots
+     * @return the {@link RetainedSize}
+     */
+    static RetainedSize measure(final Object... roots) {
+        final RetainedSize res = new RetainedSize();
+        final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<Object> todo = new ArrayDeque<>();
+        for (Object root : roots) {
+            if (root != null && visited.add(root)) {
+                todo.push(root);
+            }
+        }
+        while (!todo.isEmpty()) {
+            final Object o = todo.pop();
+            final Class<?> clz = o.getClass();
+            final long size;
+            if (clz.isArray()) {
+                final Class<?> component = clz.getComponentType();
+                final int length = Array.getLength(o);
+                size = align(ARRAY_HEADER + (long) length * sizeOf(component));
+                if (!component.isPrimitive()) {
+                    for (Object e : (Object[]) o) {
+                        follow(e, visited, todo);
+                    }
+                }
+            } else {
+                final ClassInfo info = infos.computeIfAbsent(clz, ClassInfo::new);
+                size = info.shallowSize;
+                for (Field f : info.references) {
+                    try {
+                        follow(f.get(o), visited, todo);
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+            res.bytes += size;
+            res.objects++;
+            final long[] stat = res.perClass.computeIfAbsent(clz, (k) -> new long[2]);
+            stat[0]++;
+            stat[1] += size;
+        }
+        return res;
+    }
+
+    private static void follow(
+            final Object o,
+            final Set<Object> visited,
+            final Deque<Object> todo) {
+        if (o == null || isShared(o) || !visited.add(o)) {
+            return;
+        }
+        todo.push(o);
+    }
+
+    private static boolean isShared(final Object o) {
+        return o instanceof Recognizer ||
+                o instanceof ATN ||
+                o instanceof DFA ||
+                o instanceof Class ||
+                o instanceof ClassLoader ||
+                o instanceof Thread;
+    }
+
+    private static int sizeOf(final Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        } else {
+            return REFERENCE;
+        }
+    }
+
+    private static long align(final long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static final class ClassInfo {
+        final long shallowSize;
+        final Field[] references;
+
+        ClassInfo(final Class<?> clz) {
+            long size = OBJECT_HEADER;
+            final List<Field> refs = new ArrayList<>();
+            for (Class<?> c = clz; c != null; c = c.getSuperclass()) {
+                for (Field f : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(f.getModifiers())) {
+                        continue;
+                    }
+                    final Class<?> type = f.getType();
+                    size += sizeOf(type);
+                    if (!type.isPrimitive()) {
+                        f.setAccessible(true);
+                        refs.add(f);
+                    }
+                }
+            }
+            this.shallowSize = align(size);
+            this.references = refs.toArray(new Field[refs.size()]);
+        }
+    }
+}
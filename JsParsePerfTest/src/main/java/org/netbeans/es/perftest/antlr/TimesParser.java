@@ -41,80 +41,175 @@
  */
 package org.netbeans.es.perftest.antlr;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Deque;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import org.antlr.v4.runtime.Parser;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.TokenStream;
 import org.netbeans.modules.javascript2.editor.parser6.ECMAScript6Parser;
 
 /**
- *
+ * Measures the self time of rules per lookahead token.
+ * The times are kept in primitive arrays indexed by rule and token, the rule
+ * entries on a preallocated stack. The self time is the rule time minus the
+ * time of its direct children, so the exit is constant time. In the sampling
+ * mode only every Nth rule entry on average and its direct children are timed
+ * and the self time is scaled by N. The gaps between the sampled entries are
+ * random, a fixed period aliases with the periodic structure of the source.
+ * When given a {@link CallTree} the self times are also recorded per rule stack.
  * @author Tomas Zezula
  */
 public class TimesParser extends ECMAScript6Parser {
-    private final Deque<RuleRun> activeRules;
-    private final Map<RuleTime,RuleTime> histogram;
+    private static final int INITIAL_DEPTH = 256;
+    private static final byte SAMPLED = 1;
+    private static final byte TIMED = 2;
+
+    private final int sampling;
+    private final int tokens;
+    private final long[] histogram;
+    private final CallTree calls;
+    private int[] keys;
+    private long[] starts;
+    private long[] children;
+    private byte[] flags;
+    private int[] nodes;
+    private int depth;
+    private int untilSample;
 
     public TimesParser(TokenStream input) {
+        this(input, 1, null);
+    }
+
+    public TimesParser(TokenStream input, int sampling) {
+        this(input, sampling, null);
+    }
+
+    /**
+     * Creates a new {@link TimesParser}.
+     * @param input the tokens
+     * @param sampling time every Nth rule entry on average, 1 times all of them
+     * @param calls the tree to record the times per rule stack into or null
+     */
+    public TimesParser(TokenStream input, int sampling, CallTree calls) {
         super(input);
-        activeRules = new ArrayDeque<>();
-        histogram = new HashMap<>();
+        if (sampling < 1) {
+            throw new IllegalArgumentException(Integer.toString(sampling));
+        }
+        this.sampling = sampling;
+        this.calls = calls;
+        //Index 0 is EOF
+        tokens = getATN().maxTokenType + 2;
+        histogram = new long[getRuleNames().length * tokens];
+        keys = new int[INITIAL_DEPTH];
+        starts = new long[INITIAL_DEPTH];
+        children = new long[INITIAL_DEPTH];
+        flags = new byte[INITIAL_DEPTH];
+        nodes = calls != null ?
+                new int[INITIAL_DEPTH] :
+                null;
+        untilSample = nextSample();
     }
 
     @Override
     public void enterRule(ParserRuleContext localctx, int state, int ruleIndex) {
-        activeRules.push(new RuleRun(ruleIndex, _input.LA(1), System.nanoTime()));
+        ruleEntered(ruleIndex);
         super.enterRule(localctx, state, ruleIndex);
     }
 
+    @Override
+    public void enterRecursionRule(ParserRuleContext localctx, int state, int ruleIndex, int precedence) {
+        ruleEntered(ruleIndex);
+        super.enterRecursionRule(localctx, state, ruleIndex, precedence);
+    }
+
+    @Override
+    public void unrollRecursionContexts(ParserRuleContext _parentctx) {
+        super.unrollRecursionContexts(_parentctx);
+        ruleExited();
+    }
+
     @Override
     public void exitRule() {
         super.exitRule();
-        final RuleRun head = activeRules.pop();
-        final RuleTime key = new RuleTime(head.ruleNo, head.input);
-        RuleTime timeSoFar = histogram.get(key);
-        if (timeSoFar == null) {
-            timeSoFar = key;
+        ruleExited();
+    }
+
+    private void ruleEntered(final int ruleIndex) {
+        if (depth == keys.length) {
+            final int newLength = depth << 1;
+            keys = Arrays.copyOf(keys, newLength);
+            starts = Arrays.copyOf(starts, newLength);
+            children = Arrays.copyOf(children, newLength);
+            flags = Arrays.copyOf(flags, newLength);
+            if (nodes != null) {
+                nodes = Arrays.copyOf(nodes, newLength);
+            }
+        }
+        final boolean sampled = --untilSample == 0;
+        if (sampled) {
+            untilSample = nextSample();
         }
-        final long selfTime = System.nanoTime() - head.startTime - head.normalization;
-        timeSoFar.time += selfTime;
-        histogram.put(key, timeSoFar);
-        for (RuleRun t : activeRules) {
-            t.normalization+=selfTime;
+        final boolean parentSampled = depth > 0 && (flags[depth - 1] & SAMPLED) != 0;
+        keys[depth] = ruleIndex * tokens + _input.LA(1) + 1;
+        if (nodes != null) {
+            nodes[depth] = calls.child(
+                    depth > 0 ? nodes[depth - 1] : CallTree.ROOT,
+                    ruleIndex);
         }
+        if (sampled || parentSampled) {
+            flags[depth] = sampled ?
+                    SAMPLED | TIMED :
+                    TIMED;
+            children[depth] = 0;
+            starts[depth] = System.nanoTime();
+        } else {
+            flags[depth] = 0;
+        }
+        depth++;
+    }
 
+    private void ruleExited() {
+        final int top = --depth;
+        final byte f = flags[top];
+        if (f != 0) {
+            final long time = System.nanoTime() - starts[top];
+            if ((f & SAMPLED) != 0) {
+                final long self = (time - children[top]) * sampling;
+                histogram[keys[top]] += self;
+                if (nodes != null) {
+                    calls.add(nodes[top], self);
+                }
+            }
+            if (top > 0 && (flags[top - 1] & SAMPLED) != 0) {
+                children[top - 1] += time;
+            }
+        }
+    }
+
+    private int nextSample() {
+        return sampling == 1 ?
+                1 :
+                1 + ThreadLocalRandom.current().nextInt(2 * sampling - 1);
     }
 
     public final Collection<RuleTime> getHistogram() {
-        final List<RuleTime> l = new ArrayList<>(histogram.values());
+        final List<RuleTime> l = new ArrayList<>();
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] != 0) {
+                final RuleTime rt = new RuleTime(i / tokens, i % tokens - 1);
+                rt.time = histogram[i];
+                l.add(rt);
+            }
+        }
         Collections.sort(l);
         Collections.reverse(l);
         return l;
     }
 
-    private static final class RuleRun {
-        final int ruleNo;
-        final int input;
-        final long startTime;
-        long normalization;
-
-        RuleRun(
-                int ruleNo,
-                int input,
-                long startTime) {
-            this.ruleNo = ruleNo;
-            this.input = input;
-            this.startTime = startTime;
-        }
-    }
-
     public static final class RuleTime implements Comparable<RuleTime>{
         final int ruleNo;
         final int input;
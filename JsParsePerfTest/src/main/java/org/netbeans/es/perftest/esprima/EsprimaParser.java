@@ -68,12 +68,31 @@ public final class EsprimaParser implements ParserImplementation {
         }
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return false;
+    }
+
+    @Override
+    public long countTokens(String name, char[] content) {
+        return -1;
+    }
+
     @Override
     public boolean parse(File file, ParserOptions options) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Files.copy(file.toPath(), buffer);
+        return parse(new String(buffer.toByteArray(), "UTF-8"));    //NOI18N
+    }
+
+    @Override
+    public boolean parse(String name, char[] content, ParserOptions options) throws IOException {
+        return parse(new String(content));
+    }
+
+    private boolean parse(String content) throws IOException {
         try {
-            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            Files.copy(file.toPath(), buffer);
-            bindings.put("_fileContent", new String(buffer.toByteArray(), "UTF-8"));    //NOI18N
+            bindings.put("_fileContent", content);    //NOI18N
             jsRuntime.eval("JSON.stringify(esprima.parse(_fileContent),null, 2)", new SimpleBindings(bindings));
             return true;
         } catch (ScriptException ex) {
@@ -81,16 +81,34 @@ public class NashornParser implements ParserImplementation {
         }
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    public long countTokens(String name, char[] content) {
+        return -1;
+    }
+
     @Override
     public boolean parse(File file, ParserOptions options) throws IOException {
+        return parse(file.getAbsolutePath(), Source.sourceFor(file.getName(), file), options);
+    }
+
+    @Override
+    public boolean parse(String name, char[] content, ParserOptions options) throws IOException {
+        return parse(name, Source.sourceFor(name, content), options);
+    }
+
+    private boolean parse(String name, Source src, ParserOptions options) {
         final PrintWriter err = options.isPrintError() ?
                 options.getProgressWriter() :
                 new PrintWriter(new OutputStreamWriter(new ByteArrayOutputStream()));
         final ScriptEnvironment env = new ScriptEnvironment(
-                new jdk.nashorn.internal.runtime.options.Options(file.getAbsolutePath()),
+                new jdk.nashorn.internal.runtime.options.Options(name),
                 err,
                 err);
-        final Source src = Source.sourceFor(file.getName(), file);
         final ErrorManager em = new ErrorManager(err);
         final Parser p = new Parser(env, src, em);
         final FunctionNode node = p.parse();